@@ -0,0 +1,91 @@
+package org.fcrepo.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Complete client calls against an embedded {@link StubRepository}, shared by all benchmark
+ * threads, so transport, pooling and parsing costs are measured together, for each {@link Transport}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class EndToEndBenchmark {
+
+	/* "memory" leaves out the network and the HTTP stack, isolating the cost of the client itself */
+	@Param({"apache", "jdk", "memory"})
+	public String transport;
+
+	private StubRepository repository;
+	private FedoraClient client;
+
+	@Setup
+	public void setUp() throws IOException {
+		repository = new StubRepository(10000, 64 * 1024);
+		if ("jdk".equals(transport)) {
+			client = new FedoraClient(new JdkTransport());
+		} else if ("memory".equals(transport)) {
+			client = new FedoraClient(repository.newInMemoryTransport());
+		} else {
+			client = new FedoraClient();
+		}
+		client.setFedoraUri(repository.getUri());
+	}
+
+	@TearDown
+	public void tearDown() {
+		client.shutdown();
+		repository.stop();
+	}
+
+	@Benchmark
+	public Object objectProfile() throws IOException {
+		return client.getObjectProfile("test:object1");
+	}
+
+	@Benchmark
+	public Object objectDatastreams() throws IOException {
+		return client.getObjectDatastreams("test:object1");
+	}
+
+	@Benchmark
+	public Object datastreamProfile() throws IOException {
+		return client.getDatastreamProfile("test:object1", "test:ds1");
+	}
+
+	@Benchmark
+	public Object datastreamFixity() throws IOException {
+		return client.getDatastreamFixity("test:object1", "test:ds1");
+	}
+
+	@Benchmark
+	public long datastreamContent() throws IOException {
+		final InputStream content = client.getDatastreamContent("test:object1", "test:ds1");
+		try {
+			return IOUtils.copyLarge(content, new NullOutputStream());
+		} finally {
+			content.close();
+		}
+	}
+
+	@Benchmark
+	public List<String> pids() throws IOException {
+		return client.getPids();
+	}
+}
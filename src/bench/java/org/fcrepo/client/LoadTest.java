@@ -0,0 +1,356 @@
+package org.fcrepo.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.fcrepo.jaxb.responses.access.ObjectDatastreams;
+import org.fcrepo.jaxb.responses.access.ObjectDatastreams.DatastreamElement;
+
+/**
+ * Generates read load against a repository through {@link FedoraClient} and reports throughput
+ * and latency percentiles for each kind of request, to size a repository before it meets
+ * real traffic. Without <code>--url</code> the load goes to an embedded {@link StubRepository},
+ * which measures the client and the local network stack alone.
+ * <p>
+ * In the closed loop, each of <code>--concurrency</code> workers sends its next request as soon
+ * as the previous one completes, which finds the maximum throughput. In the open loop, requests
+ * are started at a fixed <code>--rate</code> whatever the response times, and latency is measured
+ * from when each request was due rather than when it was sent, so a saturated repository shows
+ * up as growing latency instead of being hidden by the load generator slowing down.
+ * <p>
+ * Run with:
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:java -Dexec.mainClass=org.fcrepo.client.LoadTest \
+ *     -Dexec.args="--url http://localhost:8080/fcrepo --mode open --rate 500 --mix profile=60,content=40"
+ * </pre>
+ * Options, with their defaults:
+ * <pre>
+ * --url          the repository, or an embedded stub repository if missing
+ * --mix          profile=40,datastreams=20,content=20,fixity=20  relative weights of each request
+ * --mode         closed  or open
+ * --concurrency  16      workers in the closed loop, the most requests in flight in the open loop
+ * --rate         100     requests per second in the open loop
+ * --duration     30      seconds to measure
+ * --warmup       5       seconds of load before measuring
+ * --objects      1000    objects sampled from the object list as targets
+ * --transport    apache  or jdk
+ * </pre>
+ */
+public class LoadTest {
+
+	enum Request {
+		PROFILE("profile") {
+			@Override
+			long run(FedoraClient client, DatastreamRef target) throws IOException {
+				client.getObjectProfile(target.getPid());
+				return 0;
+			}
+		},
+		DATASTREAMS("datastreams") {
+			@Override
+			long run(FedoraClient client, DatastreamRef target) throws IOException {
+				client.getObjectDatastreams(target.getPid());
+				return 0;
+			}
+		},
+		CONTENT("content") {
+			@Override
+			long run(FedoraClient client, DatastreamRef target) throws IOException {
+				final InputStream content = client.getDatastreamContent(target.getPid(), target.getDsId());
+				try {
+					final byte[] buffer = new byte[64 * 1024];
+					long bytes = 0;
+					int n;
+					while ((n = content.read(buffer)) != -1) {
+						bytes += n;
+					}
+					return bytes;
+				} finally {
+					content.close();
+				}
+			}
+		},
+		FIXITY("fixity") {
+			@Override
+			long run(FedoraClient client, DatastreamRef target) throws IOException {
+				client.getDatastreamFixity(target.getPid(), target.getDsId());
+				return 0;
+			}
+		};
+
+		final String name;
+
+		private Request(String name) {
+			this.name = name;
+		}
+
+		/* returns the bytes of content read */
+		abstract long run(FedoraClient client, DatastreamRef target) throws IOException;
+
+		static Request named(String name) {
+			for (Request request : values()) {
+				if (request.name.equals(name)) {
+					return request;
+				}
+			}
+			throw new IllegalArgumentException("Unknown request '" + name + "' in the mix");
+		}
+	}
+
+	/* the measurements of one period, replaced wholesale when the warmup ends */
+	static class Results {
+		final Map<Request, LatencyHistogram> latencies = new HashMap<Request, LatencyHistogram>();
+		final Map<Request, AtomicLong> errors = new HashMap<Request, AtomicLong>();
+		final AtomicLong bytes = new AtomicLong();
+
+		Results() {
+			for (Request request : Request.values()) {
+				latencies.put(request, new LatencyHistogram());
+				errors.put(request, new AtomicLong());
+			}
+		}
+	}
+
+	private final FedoraClient client;
+	private final List<DatastreamRef> targets;
+	private final Request[] requests;
+	private final int[] cumulativeWeights;
+	private final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+		@Override
+		protected Random initialValue() {
+			return new Random();
+		}
+	};
+	private volatile Results results = new Results();
+	private volatile boolean running = true;
+
+	LoadTest(FedoraClient client, List<DatastreamRef> targets, Map<Request, Integer> mix) {
+		this.client = client;
+		this.targets = targets;
+		this.requests = new Request[mix.size()];
+		this.cumulativeWeights = new int[mix.size()];
+		int i = 0;
+		int total = 0;
+		for (Map.Entry<Request, Integer> weight : mix.entrySet()) {
+			total += weight.getValue();
+			requests[i] = weight.getKey();
+			cumulativeWeights[i++] = total;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		final Map<String, String> options = parse(args);
+		final int concurrency = Integer.parseInt(option(options, "concurrency", "16"));
+		final FedoraClient client = "jdk".equals(option(options, "transport", "apache"))
+				? new FedoraClient(new JdkTransport(concurrency, JdkTransport.DEFAULT_CONNECT_TIMEOUT_MILLIS, JdkTransport.DEFAULT_READ_TIMEOUT_MILLIS))
+				: new FedoraClient(concurrency, concurrency);
+		StubRepository stub = null;
+		if (options.containsKey("url")) {
+			client.setFedoraUri(options.get("url"));
+		} else {
+			stub = new StubRepository(Integer.parseInt(option(options, "objects", "1000")), 64 * 1024);
+			client.setFedoraUri(stub.getUri());
+		}
+		try {
+			final List<DatastreamRef> targets = sample(client, Integer.parseInt(option(options, "objects", "1000")));
+			if (targets.isEmpty()) {
+				throw new IllegalStateException("The repository has no objects with datastreams to load");
+			}
+			final LoadTest test = new LoadTest(client, targets, mix(option(options, "mix", "profile=40,datastreams=20,content=20,fixity=20")));
+			final long warmupMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(option(options, "warmup", "5")));
+			final long durationMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(option(options, "duration", "30")));
+			System.out.println("Loading " + targets.size() + " datastreams of " + client.getFedoraUri());
+			final Results results;
+			if ("open".equals(option(options, "mode", "closed"))) {
+				results = test.runOpenLoop(Double.parseDouble(option(options, "rate", "100")), concurrency, warmupMillis, durationMillis);
+			} else {
+				results = test.runClosedLoop(concurrency, warmupMillis, durationMillis);
+			}
+			System.out.print(report(results, durationMillis));
+		} finally {
+			client.shutdown();
+			if (stub != null) {
+				stub.stop();
+			}
+		}
+	}
+
+	Results runClosedLoop(int concurrency, long warmupMillis, long durationMillis) throws InterruptedException {
+		final ExecutorService workers = Executors.newFixedThreadPool(concurrency, new DaemonThreadFactory("load-test"));
+		try {
+			for (int i = 0; i < concurrency; i++) {
+				workers.execute(new Runnable() {
+					@Override
+					public void run() {
+						while (running) {
+							send(System.nanoTime());
+						}
+					}
+				});
+			}
+			return measure(warmupMillis, durationMillis);
+		} finally {
+			workers.shutdownNow();
+		}
+	}
+
+	Results runOpenLoop(final double rate, int concurrency, long warmupMillis, long durationMillis) throws InterruptedException {
+		final ExecutorService workers = Executors.newFixedThreadPool(concurrency, new DaemonThreadFactory("load-test"));
+		final Thread arrivals = new Thread("load-test-arrivals") {
+			@Override
+			public void run() {
+				final long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+				long due = System.nanoTime();
+				try {
+					while (running) {
+						final long wait = due - System.nanoTime();
+						if (wait > 0) {
+							TimeUnit.NANOSECONDS.sleep(wait);
+						}
+						final long intended = due;
+						workers.execute(new Runnable() {
+							@Override
+							public void run() {
+								if (running) {
+									send(intended);
+								}
+							}
+						});
+						due += interval;
+					}
+				} catch (InterruptedException e) {
+					// stopped
+				}
+			}
+		};
+		arrivals.setDaemon(true);
+		arrivals.start();
+		try {
+			return measure(warmupMillis, durationMillis);
+		} finally {
+			arrivals.interrupt();
+			workers.shutdownNow();
+		}
+	}
+
+	private Results measure(long warmupMillis, long durationMillis) throws InterruptedException {
+		Thread.sleep(warmupMillis);
+		final Results measured = new Results();
+		results = measured;
+		Thread.sleep(durationMillis);
+		running = false;
+		return measured;
+	}
+
+	/* latency counts from when the request was due, which in the open loop may be before it could be sent */
+	private void send(long intendedNanos) {
+		final Random rnd = random.get();
+		final Request request = pick(rnd.nextInt(cumulativeWeights[cumulativeWeights.length - 1]));
+		final DatastreamRef target = targets.get(rnd.nextInt(targets.size()));
+		final Results current = results;
+		try {
+			current.bytes.addAndGet(request.run(client, target));
+			current.latencies.get(request).record(System.nanoTime() - intendedNanos);
+		} catch (Exception e) {
+			current.errors.get(request).incrementAndGet();
+		}
+	}
+
+	private Request pick(int weight) {
+		for (int i = 0; i < cumulativeWeights.length; i++) {
+			if (weight < cumulativeWeights[i]) {
+				return requests[i];
+			}
+		}
+		return requests[requests.length - 1];
+	}
+
+	static String report(Results results, long durationMillis) {
+		final StringBuilder report = new StringBuilder(String.format("%-12s %10s %10s %8s %9s %9s %9s %9s %9s %9s%n",
+				"request", "count", "req/s", "errors", "mean ms", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+		long total = 0;
+		for (Request request : Request.values()) {
+			final LatencyHistogram latency = results.latencies.get(request);
+			final long errors = results.errors.get(request).get();
+			if (latency.getCount() == 0 && errors == 0) {
+				continue;
+			}
+			total += latency.getCount();
+			report.append(String.format("%-12s %10d %10.1f %8d %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f%n", request.name,
+					latency.getCount(), latency.getCount() * 1000d / durationMillis, errors, millis(latency.getMeanNanos()),
+					millis(latency.getPercentileNanos(50)), millis(latency.getPercentileNanos(90)),
+					millis(latency.getPercentileNanos(99)), millis(latency.getPercentileNanos(99.9)),
+					millis(latency.getMaxNanos())));
+		}
+		report.append(String.format("total %d requests, %.1f req/s, %.1f MB/s of content%n", total,
+				total * 1000d / durationMillis, results.bytes.get() * 1000d / durationMillis / (1024 * 1024)));
+		return report.toString();
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1000000d;
+	}
+
+	/* the first datastream of each of the first objects in the object list */
+	static List<DatastreamRef> sample(FedoraClient client, int objects) throws IOException {
+		final List<DatastreamRef> targets = new ArrayList<DatastreamRef>(objects);
+		final PidIterator pids = client.iteratePids();
+		try {
+			while (pids.hasNext() && targets.size() < objects) {
+				final String pid = pids.next();
+				final ObjectDatastreams datastreams = client.getObjectDatastreams(pid);
+				if (datastreams.datastreams != null && !datastreams.datastreams.isEmpty()) {
+					final DatastreamElement ds = datastreams.datastreams.iterator().next();
+					targets.add(new DatastreamRef(pid, ds.dsid));
+				}
+			}
+		} finally {
+			pids.close();
+		}
+		return targets;
+	}
+
+	static Map<Request, Integer> mix(String mix) {
+		final Map<Request, Integer> weights = new LinkedHashMap<Request, Integer>();
+		for (String part : mix.split(",")) {
+			final String[] weight = part.trim().split("=");
+			if (weight.length != 2) {
+				throw new IllegalArgumentException("Expected request=weight in the mix but found '" + part + "'");
+			}
+			final int value = Integer.parseInt(weight[1].trim());
+			if (value > 0) {
+				weights.put(Request.named(weight[0].trim()), value);
+			}
+		}
+		if (weights.isEmpty()) {
+			throw new IllegalArgumentException("The mix has no requests");
+		}
+		return weights;
+	}
+
+	private static Map<String, String> parse(String[] args) {
+		final Map<String, String> options = new HashMap<String, String>();
+		for (int i = 0; i < args.length; i++) {
+			if (!args[i].startsWith("--") || i + 1 == args.length) {
+				throw new IllegalArgumentException("Expected --option value but found '" + args[i] + "'");
+			}
+			options.put(args[i].substring(2), args[++i]);
+		}
+		return options;
+	}
+
+	private static String option(Map<String, String> options, String name, String defaultValue) {
+		final String value = options.get(name);
+		return (value != null) ? value : defaultValue;
+	}
+}
@@ -0,0 +1,54 @@
+package org.fcrepo.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing the object list: the streaming {@link PidIterator} against reading the whole
+ * body into a String and splitting it. The largest sizes need a generous heap, e.g.
+ * <code>-Djmh.args="-jvmArgs -Xmx4g PidParsing"</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PidParsingBenchmark {
+
+	@Param({"10000", "100000", "1000000", "10000000"})
+	public int pidCount;
+
+	private byte[] json;
+
+	@Setup
+	public void setUp() {
+		json = StubRepository.pidList(pidCount);
+	}
+
+	@Benchmark
+	public void streaming(Blackhole bh) {
+		final PidIterator pids = new PidIterator(new ByteArrayInputStream(json));
+		while (pids.hasNext()) {
+			bh.consume(pids.next());
+		}
+	}
+
+	@Benchmark
+	public List<String> stringSplit() throws IOException {
+		String data = IOUtils.toString(new ByteArrayInputStream(json));
+		data = data.substring(1, data.length() - 1);
+		return Arrays.asList(data.split(","));
+	}
+}
@@ -0,0 +1,39 @@
+package org.fcrepo.client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.methods.HttpGet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of building request URIs, exercising buildURI through the request builders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RequestBuilderBenchmark {
+
+	private FedoraClient client;
+
+	@Setup
+	public void setUp() {
+		client = new FedoraClient(new InMemoryTransport());
+		client.setFedoraUri("http://localhost:8080/fcrepo");
+	}
+
+	@Benchmark
+	public HttpGet objectProfileRequest() {
+		return client.getObjectProfileRequest("test:object1");
+	}
+
+	@Benchmark
+	public HttpGet datastreamContentRequest() {
+		return client.getDatastreamContentRequest("test:object1", "test:ds1");
+	}
+}
@@ -0,0 +1,165 @@
+package org.fcrepo.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An embedded HTTP server answering the fcrepo REST paths used by {@link FedoraClient}
+ * with canned responses, so the client can be measured without a repository.
+ */
+public class StubRepository implements HttpHandler {
+
+	static {
+		/* small canned responses otherwise stall on Nagle's algorithm and delayed ACKs */
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	private final HttpServer server;
+	private final ExecutorService threads;
+	private final byte[] profile;
+	private final byte[] datastreams;
+	private final byte[] datastreamProfile;
+	private final byte[] fixity;
+	private final byte[] content;
+	private final byte[] pids;
+
+	/**
+	 * @param pidCount the number of pids in the object list
+	 * @param contentSize the size in bytes of every datastream's content
+	 */
+	public StubRepository(int pidCount, int contentSize) throws IOException {
+		profile = resource("good-profile.xml");
+		datastreams = resource("good-datastreams.xml");
+		datastreamProfile = resource("good-datastream-profile.xml");
+		fixity = resource("good-datastream-fixity.xml");
+		content = new byte[contentSize];
+		new Random(0).nextBytes(content);
+		pids = pidList(pidCount);
+		threads = Executors.newFixedThreadPool(64, new DaemonThreadFactory("stub-repository"));
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+		server.createContext("/", this);
+		server.setExecutor(threads);
+		server.start();
+	}
+
+	/**
+	 * @return the base URI to hand to {@link FedoraClient#setFedoraUri(String)}
+	 */
+	public String getUri() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/fcrepo";
+	}
+
+	public void stop() {
+		server.stop(0);
+		threads.shutdownNow();
+	}
+
+	/**
+	 * @return a transport answering the same requests in memory, to measure the client without the network
+	 */
+	public InMemoryTransport newInMemoryTransport() {
+		final InMemoryTransport transport = new InMemoryTransport();
+		transport.setDefaultHandler(new InMemoryTransport.Handler() {
+			@Override
+			public HttpResponse handle(HttpUriRequest request) {
+				final String path = request.getURI().getPath();
+				final String contentType = contentType(path);
+				if (contentType == null) {
+					return InMemoryTransport.response(404, null, null);
+				}
+				return InMemoryTransport.response(200, contentType, "HEAD".equals(request.getMethod()) ? null : body(path));
+			}
+		});
+		return transport;
+	}
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		try {
+			IOUtils.copy(exchange.getRequestBody(), new NullOutputStream());
+			final String path = exchange.getRequestURI().getPath();
+			final String contentType = contentType(path);
+			if (contentType != null) {
+				respond(exchange, contentType, body(path));
+			} else {
+				exchange.sendResponseHeaders(404, -1);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/* /fcrepo/rest/objects[/pid[/datastreams/[dsid[/content|/fixity]]]] */
+	private byte[] body(String path) {
+		final String[] parts = path.split("/");
+		if (path.endsWith("/rest/objects")) {
+			return pids;
+		} else if (parts.length == 5) {
+			return profile;
+		} else if (path.endsWith("/datastreams/")) {
+			return datastreams;
+		} else if (parts.length == 7) {
+			return datastreamProfile;
+		} else if (path.endsWith("/content")) {
+			return content;
+		} else if (path.endsWith("/fixity")) {
+			return fixity;
+		}
+		return null;
+	}
+
+	private String contentType(String path) {
+		final byte[] body = body(path);
+		if (body == null) {
+			return null;
+		}
+		return (body == pids) ? "application/json" : (body == content) ? "application/octet-stream" : "text/xml";
+	}
+
+	private static void respond(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		if ("HEAD".equals(exchange.getRequestMethod())) {
+			exchange.getResponseHeaders().set("Content-Length", Integer.toString(body.length));
+			exchange.sendResponseHeaders(200, -1);
+			return;
+		}
+		exchange.sendResponseHeaders(200, body.length);
+		final OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.close();
+	}
+
+	static byte[] pidList(int count) {
+		final StringBuilder json = new StringBuilder(count * 16 + 2).append('[');
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			json.append("test:object").append(i);
+		}
+		return json.append(']').toString().getBytes();
+	}
+
+	static byte[] resource(String name) throws IOException {
+		final InputStream in = StubRepository.class.getResourceAsStream(name);
+		try {
+			return IOUtils.toByteArray(in);
+		} finally {
+			in.close();
+		}
+	}
+}
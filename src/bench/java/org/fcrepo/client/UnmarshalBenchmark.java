@@ -0,0 +1,97 @@
+package org.fcrepo.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JAXB unmarshalling of each response type, and the streaming datastream parser against
+ * whole-document unmarshalling for large listings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UnmarshalBenchmark {
+
+	/* a datastream listing of each size, kept apart so the other benchmarks are not run once per size */
+	@State(Scope.Benchmark)
+	public static class Listing {
+
+		@Param({"1", "1000", "50000"})
+		public int datastreamCount;
+
+		private byte[] datastreams;
+
+		@Setup
+		public void setUp() throws IOException {
+			final StringBuilder xml = new StringBuilder("<objectDatastreams pid=\"test:object1\" xmlns=\"http://www.fedora.info/definitions/1/0/access/\"><datastreams>");
+			for (int i = 0; i < datastreamCount; i++) {
+				xml.append("<datastream dsid=\"ds").append(i).append("\" label=\"datastream ").append(i).append("\" mimeType=\"text/plain\"/>\n");
+			}
+			datastreams = xml.append("</datastreams></objectDatastreams>").toString().getBytes("UTF-8");
+		}
+	}
+
+	private FedoraClient client;
+	private byte[] profile;
+	private byte[] datastreamProfile;
+	private byte[] fixity;
+
+	@Setup
+	public void setUp() throws IOException {
+		client = new FedoraClient(new InMemoryTransport());
+		profile = StubRepository.resource("good-profile.xml");
+		datastreamProfile = StubRepository.resource("good-datastream-profile.xml");
+		fixity = StubRepository.resource("good-datastream-fixity.xml");
+	}
+
+	@Benchmark
+	public Object objectProfile() throws JAXBException {
+		return unmarshal(profile);
+	}
+
+	@Benchmark
+	public Object datastreamProfile() throws JAXBException {
+		return unmarshal(datastreamProfile);
+	}
+
+	@Benchmark
+	public Object datastreamFixity() throws JAXBException {
+		return unmarshal(fixity);
+	}
+
+	@Benchmark
+	public Object objectDatastreams(Listing listing) throws JAXBException {
+		return unmarshal(listing.datastreams);
+	}
+
+	@Benchmark
+	public void objectDatastreamsStreaming(Listing listing, Blackhole bh) throws IOException, JAXBException {
+		final DatastreamIterator it = new DatastreamIterator(new ByteArrayInputStream(listing.datastreams), client.getUnmarshallerPool(), null);
+		while (it.hasNext()) {
+			bh.consume(it.next());
+		}
+	}
+
+	private Object unmarshal(byte[] xml) throws JAXBException {
+		final Unmarshaller unmarshaller = client.getUnmarshaller();
+		try {
+			return unmarshaller.unmarshal(new ByteArrayInputStream(xml));
+		} finally {
+			client.releaseUnmarshaller(unmarshaller);
+		}
+	}
+}
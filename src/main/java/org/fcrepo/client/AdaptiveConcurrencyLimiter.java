@@ -0,0 +1,110 @@
+package org.fcrepo.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of requests in flight with an additive-increase/multiplicative-decrease
+ * algorithm. Every request that completes within the latency threshold raises the limit by
+ * about one per round of requests; every failure or slow response cuts it by the backoff ratio.
+ * The limit therefore settles near the concurrency the repository can serve without queueing.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+	public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final long latencyThresholdNanos;
+	private final long maxWaitNanos;
+	private final double backoffRatio = DEFAULT_BACKOFF_RATIO;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition slotFreed = lock.newCondition();
+	private double limit;
+	private int inFlight;
+
+	/**
+	 * @param initialLimit the number of concurrent requests to start with
+	 * @param minLimit the limit is never cut below this
+	 * @param maxLimit the limit is never raised above this
+	 * @param latencyThresholdMillis responses slower than this count as a sign of overload
+	 * @param maxWaitMillis how long a caller may wait for a free slot before the request is rejected
+	 */
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long latencyThresholdMillis, long maxWaitMillis) {
+		if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+			throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max");
+		}
+		this.limit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+		this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+	}
+
+	void acquire() throws RequestRejectedException, InterruptedException {
+		lock.lock();
+		try {
+			long remaining = maxWaitNanos;
+			while (inFlight >= (int) limit) {
+				if (remaining <= 0) {
+					throw new RequestRejectedException("No free request slot after " + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos)
+							+ "ms, concurrency limit is " + (int) limit);
+				}
+				remaining = slotFreed.awaitNanos(remaining);
+			}
+			inFlight++;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param latencyNanos how long the request took
+	 * @param success false if the request failed or the repository reported an error
+	 */
+	void release(long latencyNanos, boolean success) {
+		lock.lock();
+		try {
+			inFlight--;
+			if (success && latencyNanos <= latencyThresholdNanos) {
+				limit = Math.min(maxLimit, limit + 1 / limit);
+			} else {
+				limit = Math.max(minLimit, limit * backoffRatio);
+			}
+			slotFreed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/* the acquired request was abandoned by the client, so its latency is not a signal */
+	void cancel() {
+		lock.lock();
+		try {
+			inFlight--;
+			slotFreed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getLimit() {
+		lock.lock();
+		try {
+			return (int) limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
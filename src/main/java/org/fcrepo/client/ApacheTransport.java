@@ -0,0 +1,82 @@
+package org.fcrepo.client;
+
+import java.io.IOException;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Sends requests with Apache HttpClient, by default over a pool of kept-alive HTTP/1.1
+ * connections whose idle members are evicted in the background.
+ */
+public class ApacheTransport implements Transport {
+
+	private final HttpClient client;
+	private final PoolingClientConnectionManager connectionManager;
+	private final IdleConnectionMonitor idleConnectionMonitor;
+
+	/**
+	 * @param maxConnectionsPerRoute the maximum number of concurrent connections to the repository host
+	 * @param maxConnectionsTotal the maximum number of concurrent connections overall
+	 * @param keepAliveMillis how long to keep an idle connection alive when the server does not say
+	 * @param idleTimeoutMillis how long a connection may sit idle in the pool before it is evicted
+	 */
+	public ApacheTransport(int maxConnectionsPerRoute, int maxConnectionsTotal, final long keepAliveMillis, long idleTimeoutMillis) {
+		this.connectionManager = new PoolingClientConnectionManager();
+		this.connectionManager.setMaxTotal(maxConnectionsTotal);
+		this.connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+		DefaultHttpClient pooled = new DefaultHttpClient(connectionManager);
+		pooled.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+			@Override
+			public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+				long duration = super.getKeepAliveDuration(response, context);
+				return (duration > 0) ? Math.min(duration, keepAliveMillis) : keepAliveMillis;
+			}
+		});
+		this.client = pooled;
+		this.idleConnectionMonitor = new IdleConnectionMonitor(connectionManager, idleTimeoutMillis);
+		this.idleConnectionMonitor.start();
+	}
+
+	/**
+	 * Send requests with a client configured elsewhere, which is left for its owner to shut down.
+	 */
+	public ApacheTransport(HttpClient client) {
+		this.client = client;
+		this.connectionManager = null;
+		this.idleConnectionMonitor = null;
+	}
+
+	@Override
+	public HttpResponse execute(HttpUriRequest request) throws IOException {
+		return client.execute(request);
+	}
+
+	@Override
+	public int getMaxConcurrency() {
+		return (connectionManager != null) ? connectionManager.getMaxTotal() : FedoraClient.DEFAULT_MAX_CONNECTIONS_TOTAL;
+	}
+
+	/**
+	 * @return the state of the connection pool, or null when the client was configured elsewhere
+	 */
+	PoolStats getPoolStats() {
+		return (connectionManager != null) ? connectionManager.getTotalStats() : null;
+	}
+
+	@Override
+	public void shutdown() {
+		if (idleConnectionMonitor != null) {
+			idleConnectionMonitor.shutdown();
+		}
+		if (connectionManager != null) {
+			connectionManager.shutdown();
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package org.fcrepo.client;
+
+import java.util.Iterator;
+
+import org.fcrepo.jaxb.responses.access.ObjectProfile;
+import org.fcrepo.jaxb.responses.management.DatastreamFixity;
+import org.fcrepo.jaxb.responses.management.DatastreamProfile;
+
+/**
+ * Runs the same read for many items in parallel and streams back a {@link BatchResult} for
+ * each, in the order of the input or in the order the responses arrive. A failed item is
+ * reported in its result and does not stop the rest of the batch. Any iterator of items
+ * works, including the {@link PidIterator} of the whole repository.
+ * <p>
+ * Example:
+ * <pre>
+ * Batch batch = new Batch(client);
+ * batch.setParallelism(32);
+ * batch.setOrdered(false);
+ * BatchIterator&lt;String, ObjectProfile&gt; results = batch.getObjectProfiles(client.iteratePids());
+ * while (results.hasNext()) {
+ *     BatchResult&lt;String, ObjectProfile&gt; result = results.next();
+ *     ...
+ * }
+ * </pre>
+ */
+public class Batch {
+
+	public static final int DEFAULT_PARALLELISM = 16;
+
+	private final FedoraClient client;
+	private int parallelism = DEFAULT_PARALLELISM;
+	private boolean ordered = true;
+
+	public Batch(FedoraClient client) {
+		this.client = client;
+	}
+
+	/**
+	 * @param parallelism the number of requests in flight at once
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @param ordered true, the default, to return results in the order of the input, or false
+	 * to return each as soon as it arrives
+	 */
+	public void setOrdered(boolean ordered) {
+		this.ordered = ordered;
+	}
+
+	public BatchIterator<String, ObjectProfile> getObjectProfiles(Iterator<String> pids) {
+		return new BatchIterator<String, ObjectProfile>(pids, new BatchIterator.Call<String, ObjectProfile>() {
+			@Override
+			public ObjectProfile call(String pid) throws Exception {
+				return client.getObjectProfile(pid);
+			}
+		}, parallelism, ordered);
+	}
+
+	public BatchIterator<DatastreamRef, DatastreamProfile> getDatastreamProfiles(Iterator<DatastreamRef> datastreams) {
+		return new BatchIterator<DatastreamRef, DatastreamProfile>(datastreams, new BatchIterator.Call<DatastreamRef, DatastreamProfile>() {
+			@Override
+			public DatastreamProfile call(DatastreamRef ds) throws Exception {
+				return client.getDatastreamProfile(ds.getPid(), ds.getDsId());
+			}
+		}, parallelism, ordered);
+	}
+
+	public BatchIterator<DatastreamRef, DatastreamFixity> getDatastreamFixities(Iterator<DatastreamRef> datastreams) {
+		return new BatchIterator<DatastreamRef, DatastreamFixity>(datastreams, new BatchIterator.Call<DatastreamRef, DatastreamFixity>() {
+			@Override
+			public DatastreamFixity call(DatastreamRef ds) throws Exception {
+				return client.getDatastreamFixity(ds.getPid(), ds.getDsId());
+			}
+		}, parallelism, ordered);
+	}
+}
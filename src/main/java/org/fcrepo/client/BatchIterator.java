@@ -0,0 +1,149 @@
+package org.fcrepo.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Streams the results of a {@link Batch} as they become available. Items are read from the
+ * input only as results are consumed, so at most a fixed window of results is ever held
+ * in memory, however long the input.
+ * <p>
+ * The iterator shuts its workers down once the input is exhausted. Callers which stop early
+ * must call {@link #close()}, which also closes the input if it is {@link Closeable}.
+ *
+ * @param <I> the item requested
+ * @param <T> the response for each item
+ */
+public class BatchIterator<I, T> implements Iterator<BatchResult<I, T>>, Closeable {
+
+	/* the request made for each item */
+	interface Call<I, T> {
+		T call(I item) throws Exception;
+	}
+
+	private final Iterator<I> input;
+	private final Call<I, T> call;
+	private final boolean ordered;
+	private final int window;
+	private final ExecutorService workers;
+	/* only used for results in completion order, where every finished result is taken from it */
+	private final BlockingQueue<Future<BatchResult<I, T>>> done;
+	private final CompletionService<BatchResult<I, T>> completed;
+	private final Queue<Future<BatchResult<I, T>>> pending = new LinkedList<Future<BatchResult<I, T>>>();
+	private int outstanding;
+	private long index;
+	private boolean closed;
+
+	/**
+	 * @param parallelism the number of requests in flight at once
+	 * @param ordered true to return results in the order of the input, false in the order they complete
+	 */
+	BatchIterator(Iterator<I> input, Call<I, T> call, int parallelism, boolean ordered) {
+		this.input = input;
+		this.call = call;
+		this.ordered = ordered;
+		/* in order, finished results wait behind a slow one, so allow some slack to keep the workers busy */
+		this.window = ordered ? parallelism * 2 : parallelism;
+		this.workers = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("fcrepo-batch"));
+		this.done = ordered ? null : new LinkedBlockingQueue<Future<BatchResult<I, T>>>();
+		this.completed = ordered ? null : new ExecutorCompletionService<BatchResult<I, T>>(workers, done);
+	}
+
+	@Override
+	public boolean hasNext() {
+		fill();
+		if (closed || outstanding == 0) {
+			close();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public BatchResult<I, T> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		final BatchResult<I, T> result;
+		try {
+			result = ordered ? pending.remove().get() : completed.take().get();
+		} catch (InterruptedException e) {
+			close();
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for batch results", e);
+		} catch (ExecutionException e) {
+			/* items catch their own exceptions, so only errors get here */
+			close();
+			throw new IllegalStateException("Batch request failed", e.getCause());
+		}
+		outstanding--;
+		fill();
+		return result;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Batch results are read only");
+	}
+
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		workers.shutdownNow();
+		if (input instanceof Closeable) {
+			try {
+				((Closeable) input).close();
+			} catch (IOException e) {
+				// nothing more will be read
+			}
+		}
+	}
+
+	private void fill() {
+		while (!closed && outstanding < window && input.hasNext()) {
+			final long position = index++;
+			final I item = input.next();
+			final Callable<BatchResult<I, T>> task = new Callable<BatchResult<I, T>>() {
+				@Override
+				public BatchResult<I, T> call() {
+					try {
+						return new BatchResult<I, T>(position, item, BatchIterator.this.call.call(item), null);
+					} catch (Exception e) {
+						return new BatchResult<I, T>(position, item, null, e);
+					}
+				}
+			};
+			if (ordered) {
+				pending.add(workers.submit(task));
+			} else {
+				completed.submit(task);
+			}
+			outstanding++;
+		}
+	}
+
+	/* the results held by the iterator, whether finished or not */
+	int getRetainedResults() {
+		return pending.size() + ((done != null) ? done.size() : 0);
+	}
+
+	int getWindow() {
+		return window;
+	}
+}
@@ -0,0 +1,57 @@
+package org.fcrepo.client;
+
+/**
+ * The outcome of one item of a {@link Batch}: either its value or the exception which
+ * prevented it, so one failure does not abort the rest of the batch.
+ *
+ * @param <I> the item requested, such as a pid or a {@link DatastreamRef}
+ * @param <T> the response for the item
+ */
+public class BatchResult<I, T> {
+
+	private final long index;
+	private final I item;
+	private final T value;
+	private final Exception error;
+
+	BatchResult(long index, I item, T value, Exception error) {
+		this.index = index;
+		this.item = item;
+		this.value = value;
+		this.error = error;
+	}
+
+	/**
+	 * @return the position of the item in the input, starting at 0
+	 */
+	public long getIndex() {
+		return index;
+	}
+
+	public I getItem() {
+		return item;
+	}
+
+	/**
+	 * @return the response, or null if the item failed
+	 */
+	public T getValue() {
+		return value;
+	}
+
+	/**
+	 * @return why the item failed, or null if it succeeded
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+	@Override
+	public String toString() {
+		return item + ": " + ((error == null) ? value : error);
+	}
+}
@@ -0,0 +1,71 @@
+package org.fcrepo.client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fails requests fast while the repository is unhealthy. After a run of consecutive failures
+ * the breaker opens and rejects every request for the open interval; it then lets a single
+ * trial request through, closing again if that succeeds and reopening if it fails.
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final int failureThreshold;
+	private final long openNanos;
+
+	private State state = State.CLOSED;
+	private int consecutiveFailures;
+	private long openedAt;
+	private boolean trialInFlight;
+
+	/**
+	 * @param failureThreshold the number of consecutive failures which opens the breaker
+	 * @param openMillis how long the breaker stays open before a trial request is allowed
+	 */
+	public CircuitBreaker(int failureThreshold, long openMillis) {
+		if (failureThreshold < 1) {
+			throw new IllegalArgumentException("The failure threshold must be at least 1");
+		}
+		this.failureThreshold = failureThreshold;
+		this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+	}
+
+	synchronized void acquire() throws RequestRejectedException {
+		if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+			state = State.HALF_OPEN;
+			trialInFlight = false;
+		}
+		if (state == State.OPEN || (state == State.HALF_OPEN && trialInFlight)) {
+			throw new RequestRejectedException("The repository is unavailable after " + consecutiveFailures + " consecutive failures");
+		}
+		if (state == State.HALF_OPEN) {
+			trialInFlight = true;
+		}
+	}
+
+	synchronized void record(boolean success) {
+		if (success) {
+			consecutiveFailures = 0;
+			state = State.CLOSED;
+		} else {
+			consecutiveFailures++;
+			if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+				state = State.OPEN;
+				openedAt = System.nanoTime();
+			}
+		}
+		trialInFlight = false;
+	}
+
+	/* the acquired request was never sent */
+	synchronized void cancel() {
+		trialInFlight = false;
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+}
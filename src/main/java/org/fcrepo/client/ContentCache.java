@@ -0,0 +1,463 @@
+package org.fcrepo.client;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * A size-bounded cache of datastream content on local disk, used by {@link FedoraClient}
+ * when content is requested with a known checksum or was served with an ETag. Each entry
+ * is stored in a file named after the SHA-1 of its key. Content keyed by its checksum is stored
+ * once whichever object it belongs to, while content keyed by an ETag is stored per URI, since
+ * an ETag only identifies a version of one resource. Hits are read through a memory-mapped buffer, which copies
+ * straight from the page cache without passing through the network or the Java heap.
+ * <p>
+ * Content is written to the cache while the caller reads it from the repository, and only
+ * becomes visible once it has been read to the end. The least recently read entries are
+ * deleted once the total size exceeds the limit. Entries left in the directory by an earlier
+ * run are reused, oldest first in line for eviction. The URI and ETag of content cached by ETag
+ * are kept beside it in a <code>.etag</code> file, so it can still be revalidated after a restart.
+ * A URI only maps to its latest ETag, and older versions are dropped when a new one is cached.
+ */
+public class ContentCache {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final String ETAG_SUFFIX = ".etag";
+
+	private final File directory;
+	private final long maxBytes;
+	/* file name to size, in order of last use */
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+	/* URI to ETag, and file name to URI for the entries cached by ETag */
+	private final Map<String, String> etags = new ConcurrentHashMap<String, String>();
+	private final Map<String, String> etagUris = new HashMap<String, String>();
+	private final AtomicLong temporaryFiles = new AtomicLong();
+	private long size;
+	private long hits;
+	private long misses;
+
+	/**
+	 * @param directory where to keep the content, created if missing
+	 * @param maxBytes the total size of content to keep
+	 */
+	public ContentCache(File directory, long maxBytes) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create content cache directory " + directory);
+		}
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		final File[] files = directory.listFiles();
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return (a.lastModified() < b.lastModified()) ? -1 : (a.lastModified() > b.lastModified()) ? 1 : 0;
+			}
+		});
+		for (File file : files) {
+			if (file.getName().endsWith(TEMP_SUFFIX)) {
+				/* abandoned by a run which did not finish reading */
+				file.delete();
+			} else if (file.isFile() && !file.getName().endsWith(ETAG_SUFFIX)) {
+				entries.put(file.getName(), file.length());
+				size += file.length();
+			}
+		}
+		for (File file : files) {
+			if (file.getName().endsWith(ETAG_SUFFIX)) {
+				loadETag(file);
+			}
+		}
+		evict();
+	}
+
+	/**
+	 * @return a stream over the cached content, or null if the content is not cached
+	 */
+	InputStream get(String key) throws IOException {
+		final String name = fileName(key);
+		synchronized (this) {
+			if (entries.get(name) == null) {
+				misses++;
+				return null;
+			}
+		}
+		final RandomAccessFile file;
+		try {
+			file = new RandomAccessFile(new File(directory, name), "r");
+		} catch (FileNotFoundException e) {
+			/* evicted since it was looked up, or deleted from outside the cache */
+			synchronized (this) {
+				misses++;
+				if (!new File(directory, name).exists()) {
+					remove(name);
+				}
+			}
+			return null;
+		}
+		synchronized (this) {
+			hits++;
+		}
+		try {
+			final FileChannel channel = file.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				return new FileInputStream(file.getFD()) {
+					@Override
+					public void close() throws IOException {
+						file.close();
+					}
+				};
+			}
+			/* the mapping stays valid after the channel is closed or the file is evicted */
+			final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			file.close();
+			return new ByteBufferInputStream(buffer);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return a stream which returns the content, storing it in the cache under the key
+	 * once it has been read to the end
+	 */
+	InputStream cache(String key, InputStream content) {
+		return new CachingInputStream(content, fileName(key), null, null);
+	}
+
+	/**
+	 * @return a stream which returns the content, storing it in the cache under the key only
+	 * when {@link #commit(InputStream)} is called after it has been read to the end
+	 */
+	InputStream cacheOnCommit(String key, InputStream content) {
+		final CachingInputStream caching = new CachingInputStream(content, fileName(key), null, null);
+		caching.deferred = true;
+		return caching;
+	}
+
+	/**
+	 * Store content returned by {@link #cacheOnCommit(String, InputStream)}, if all of it has been read.
+	 */
+	void commit(InputStream content) {
+		final CachingInputStream caching = (CachingInputStream) content;
+		if (caching.ended) {
+			caching.commit();
+		}
+	}
+
+	/**
+	 * Cache content served with an ETag, remembering the ETag for its URI so later requests
+	 * can be made conditional.
+	 */
+	InputStream cache(String uri, String etag, InputStream content) {
+		return new CachingInputStream(content, fileName(etagKey(uri, etag)), uri, etag);
+	}
+
+	/**
+	 * @return the ETag of the cached content for the URI, or null if there is none
+	 */
+	String getETag(String uri) {
+		final String etag = etags.get(uri);
+		if (etag == null) {
+			return null;
+		}
+		synchronized (this) {
+			if (entries.containsKey(fileName(etagKey(uri, etag)))) {
+				return etag;
+			}
+		}
+		etags.remove(uri, etag);
+		return null;
+	}
+
+	/* ETags such as "1" are only unique within a resource */
+	static String etagKey(String uri, String etag) {
+		return "etag:" + uri + " " + etag;
+	}
+
+	static String checksumKey(String checksum) {
+		return "checksum:" + checksum;
+	}
+
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Delete all cached content.
+	 */
+	public synchronized void clear() {
+		for (String name : new ArrayList<String>(entries.keySet())) {
+			remove(name);
+		}
+	}
+
+	private synchronized void added(String name, long length, String uri, String etag) {
+		final Long previous = entries.put(name, length);
+		if (previous != null) {
+			size -= previous;
+		}
+		size += length;
+		if (uri != null) {
+			final String previousETag = etags.put(uri, etag);
+			if (previousETag != null && !previousETag.equals(etag)) {
+				/* the old version can no longer be revalidated */
+				remove(fileName(etagKey(uri, previousETag)));
+			}
+			etagUris.put(name, uri);
+			saveETag(name, uri, etag);
+		}
+		evict();
+	}
+
+	/* delete an entry along with the ETag which leads to it */
+	private void remove(String name) {
+		new File(directory, name).delete();
+		new File(directory, name + ETAG_SUFFIX).delete();
+		final Long length = entries.remove(name);
+		if (length != null) {
+			size -= length;
+		}
+		final String uri = etagUris.remove(name);
+		if (uri != null) {
+			final String etag = etags.get(uri);
+			if (etag != null && name.equals(fileName(etagKey(uri, etag)))) {
+				etags.remove(uri);
+			}
+		}
+	}
+
+	private void evict() {
+		while (size > maxBytes && !entries.isEmpty()) {
+			remove(entries.keySet().iterator().next());
+		}
+	}
+
+	private void saveETag(String name, String uri, String etag) {
+		try {
+			FileUtils.writeStringToFile(new File(directory, name + ETAG_SUFFIX), uri + '\n' + etag + '\n', UTF8);
+		} catch (IOException e) {
+			/* the content is still cached for this run */
+		}
+	}
+
+	private void loadETag(File file) {
+		final String name = file.getName().substring(0, file.getName().length() - ETAG_SUFFIX.length());
+		try {
+			final List<String> lines = FileUtils.readLines(file, UTF8);
+			if (entries.containsKey(name) && lines.size() == 2 && name.equals(fileName(etagKey(lines.get(0), lines.get(1))))) {
+				etags.put(lines.get(0), lines.get(1));
+				etagUris.put(name, lines.get(0));
+				return;
+			}
+		} catch (IOException e) {
+			// deleted below
+		}
+		file.delete();
+	}
+
+	private static String fileName(String key) {
+		final byte[] hash;
+		try {
+			hash = MessageDigest.getInstance("SHA-1").digest(key.getBytes(UTF8));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is required of every JVM", e);
+		}
+		final char[] hex = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++) {
+			hex[i * 2] = HEX[(hash[i] >> 4) & 0xf];
+			hex[i * 2 + 1] = HEX[hash[i] & 0xf];
+		}
+		return new String(hex);
+	}
+
+	/* copies the content to a temporary file as it is read, and moves it into the cache at the end */
+	private class CachingInputStream extends FilterInputStream {
+
+		private final String name;
+		private final String uri;
+		private final String etag;
+		private final File temporary;
+		private OutputStream out;
+		private long length;
+		private boolean deferred;
+		private boolean ended;
+
+		CachingInputStream(InputStream in, String name, String uri, String etag) {
+			super(in);
+			this.name = name;
+			this.uri = uri;
+			this.etag = etag;
+			this.temporary = new File(directory, name + "." + temporaryFiles.incrementAndGet() + TEMP_SUFFIX);
+			try {
+				this.out = new FileOutputStream(temporary);
+			} catch (IOException e) {
+				/* caching is best effort, the caller still gets the content */
+				this.out = null;
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = super.read();
+			if (b == -1) {
+				end();
+			} else {
+				write(new byte[] {(byte) b}, 0, 1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			final int n = super.read(b, off, len);
+			if (n == -1) {
+				end();
+			} else {
+				write(b, off, n);
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			/* skipped content can't be cached */
+			abandon();
+			return super.skip(n);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void close() throws IOException {
+			abandon();
+			super.close();
+		}
+
+		private void write(byte[] b, int off, int len) {
+			if (out != null) {
+				try {
+					out.write(b, off, len);
+					length += len;
+				} catch (IOException e) {
+					abandon();
+				}
+			}
+		}
+
+		private void end() {
+			ended = true;
+			if (!deferred) {
+				commit();
+			}
+		}
+
+		private void commit() {
+			if (out == null) {
+				return;
+			}
+			try {
+				out.close();
+				out = null;
+				final File target = new File(directory, name);
+				if (temporary.renameTo(target) || (target.delete() && temporary.renameTo(target))) {
+					added(name, length, uri, etag);
+					return;
+				}
+			} catch (IOException e) {
+				// fall through to discard it
+			}
+			abandon();
+		}
+
+		private void abandon() {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// discarding it anyway
+				}
+				out = null;
+			}
+			temporary.delete();
+		}
+	}
+
+	private static class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			final int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public long skip(long n) {
+			final int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+			buffer.position(buffer.position() + skipped);
+			return skipped;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
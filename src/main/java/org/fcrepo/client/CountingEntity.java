@@ -0,0 +1,88 @@
+package org.fcrepo.client;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * Counts the bytes read from a response body and reports them to a {@link RequestListener}
+ * once the body is exhausted or closed.
+ */
+class CountingEntity extends HttpEntityWrapper {
+
+	private final Operation operation;
+	private final RequestListener listener;
+	private InputStream content;
+
+	CountingEntity(HttpEntity entity, Operation operation, RequestListener listener) {
+		super(entity);
+		this.operation = operation;
+		this.listener = listener;
+	}
+
+	@Override
+	public synchronized InputStream getContent() throws IOException {
+		if (content == null || isRepeatable()) {
+			content = new CountingInputStream(wrappedEntity.getContent());
+		}
+		return content;
+	}
+
+	private class CountingInputStream extends FilterInputStream {
+
+		private long count;
+		private boolean reported;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b == -1) {
+				report();
+			} else {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n == -1) {
+				report();
+			} else {
+				count += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				report();
+			}
+		}
+
+		private void report() {
+			if (!reported) {
+				reported = true;
+				listener.responseRead(operation, count);
+			}
+		}
+	}
+}
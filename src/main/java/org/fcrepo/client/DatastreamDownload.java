@@ -0,0 +1,266 @@
+package org.fcrepo.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+
+/**
+ * Downloads the content of a datastream to a file with parallel HTTP range requests.
+ * Each range is transferred from the response straight into the file channel at its offset.
+ * When a range fails part way, only its missing remainder is requested again, up to the
+ * configured number of attempts, as is a range answered with a <code>Content-Range</code> other
+ * than the one requested. Repositories which do not advertise byte range support are read
+ * with a single request.
+ */
+public class DatastreamDownload {
+
+	public static final long DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+	public static final int DEFAULT_CONCURRENCY = 4;
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+	private final FedoraClient client;
+	private final String objectId;
+	private final String dsId;
+	private long chunkSize = DEFAULT_CHUNK_SIZE;
+	private int concurrency = DEFAULT_CONCURRENCY;
+	private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+	/* an inclusive byte range of the content, and how much of it has been written */
+	static class Range {
+		final long first;
+		final long last;
+		volatile long written;
+
+		Range(long first, long last) {
+			this.first = first;
+			this.last = last;
+		}
+
+		long length() {
+			return last - first + 1;
+		}
+
+		Range remainder() {
+			return new Range(first + written, last);
+		}
+
+		@Override
+		public String toString() {
+			return "bytes=" + first + "-" + last;
+		}
+	}
+
+	public DatastreamDownload(FedoraClient client, String objectId, String dsId) {
+		this.client = client;
+		this.objectId = objectId;
+		this.dsId = dsId;
+	}
+
+	public void setChunkSize(long chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("The chunk size must be positive");
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	public void setConcurrency(int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("Concurrency must be at least 1");
+		}
+		this.concurrency = concurrency;
+	}
+
+	public void setMaxAttempts(int maxAttempts) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("At least one attempt is required");
+		}
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Download the content, replacing the target file.
+	 * @return the number of bytes written
+	 */
+	public long downloadTo(File target) throws IOException {
+		final HttpHead head = new HttpHead(client.getDatastreamContentRequest(objectId, dsId).getURI());
+		final HttpResponse resp = client.execute(Operation.DATASTREAM_CONTENT, head);
+		final long length;
+		final boolean ranges;
+		try {
+			if (resp.getStatusLine().getStatusCode() != 200) {
+				throw new HttpResponseException(resp.getStatusLine().getStatusCode(), "Unable to fetch datastream content from fedora: " + resp.getStatusLine().getReasonPhrase());
+			}
+			length = contentLength(resp);
+			final Header acceptRanges = resp.getFirstHeader(HttpHeaders.ACCEPT_RANGES);
+			ranges = acceptRanges != null && acceptRanges.getValue().contains("bytes");
+		} finally {
+			FedoraClient.release(resp);
+		}
+
+		final RandomAccessFile file = new RandomAccessFile(target, "rw");
+		try {
+			final FileChannel channel = file.getChannel();
+			if (!ranges || length < 0 || length <= chunkSize) {
+				file.setLength(0);
+				return downloadWhole(channel);
+			}
+			file.setLength(length);
+			List<Range> pending = new ArrayList<Range>();
+			for (long first = 0; first < length; first += chunkSize) {
+				pending.add(new Range(first, Math.min(first + chunkSize, length) - 1));
+			}
+			downloadRanges(channel, pending, length);
+			channel.force(false);
+			return length;
+		} finally {
+			file.close();
+		}
+	}
+
+	private void downloadRanges(final FileChannel channel, List<Range> pending, final long length) throws IOException {
+		final ExecutorService workers = Executors.newFixedThreadPool(Math.min(concurrency, pending.size()),
+				new DaemonThreadFactory("fcrepo-download"));
+		try {
+			IOException lastFailure = null;
+			for (int attempt = 1; attempt <= maxAttempts && !pending.isEmpty(); attempt++) {
+				final List<Future<?>> results = new ArrayList<Future<?>>(pending.size());
+				for (final Range range : pending) {
+					results.add(workers.submit(new Callable<Void>() {
+						@Override
+						public Void call() throws IOException {
+							downloadRange(channel, range, length);
+							return null;
+						}
+					}));
+				}
+				final List<Range> missing = new ArrayList<Range>();
+				for (int i = 0; i < results.size(); i++) {
+					try {
+						results.get(i).get();
+					} catch (ExecutionException e) {
+						final Range range = pending.get(i);
+						missing.add(range.remainder());
+						if (e.getCause() instanceof HttpResponseException
+								&& ((HttpResponseException) e.getCause()).getStatusCode() < 500) {
+							/* the repository refused the request, trying again will not help */
+							throw (HttpResponseException) e.getCause();
+						}
+						lastFailure = (e.getCause() instanceof IOException) ? (IOException) e.getCause()
+								: new IOException("Unable to download " + range, e.getCause());
+					}
+				}
+				pending = missing;
+			}
+			if (!pending.isEmpty()) {
+				throw new IOException("Unable to download " + pending.size() + " ranges of " + objectId + "/" + dsId
+						+ " after " + maxAttempts + " attempts", lastFailure);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while downloading " + objectId + "/" + dsId);
+		} finally {
+			workers.shutdownNow();
+		}
+	}
+
+	private void downloadRange(final FileChannel channel, final Range range, final long length) throws IOException {
+		final HttpGet get = client.getDatastreamContentRequest(objectId, dsId);
+		get.setHeader(HttpHeaders.RANGE, range.toString());
+		final HttpResponse resp = client.execute(Operation.DATASTREAM_CONTENT, get);
+		boolean complete = false;
+		try {
+			if (resp.getStatusLine().getStatusCode() != 206) {
+				throw new HttpResponseException(resp.getStatusLine().getStatusCode(), "Unable to fetch datastream content range from fedora: " + resp.getStatusLine().getReasonPhrase());
+			}
+			final Header contentRange = resp.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+			if (contentRange == null || !matches(contentRange.getValue(), range, length)) {
+				/* writing it at the requested offset would corrupt the file */
+				throw new IOException("Requested " + range + " of " + length + " but received "
+						+ ((contentRange != null) ? contentRange.getValue() : "no Content-Range"));
+			}
+			final ReadableByteChannel source = Channels.newChannel(resp.getEntity().getContent());
+			while (range.written < range.length()) {
+				long count = channel.transferFrom(source, range.first + range.written, range.length() - range.written);
+				if (count <= 0) {
+					throw new IOException("Premature end of content in " + range + " after " + range.written + " bytes");
+				}
+				range.written += count;
+			}
+			complete = true;
+		} finally {
+			if (complete) {
+				FedoraClient.release(resp);
+			} else {
+				get.abort();
+			}
+		}
+	}
+
+	private long downloadWhole(final FileChannel channel) throws IOException {
+		final InputStream content = client.getDatastreamContent(objectId, dsId);
+		try {
+			final ReadableByteChannel source = Channels.newChannel(content);
+			long position = 0;
+			long count;
+			while ((count = channel.transferFrom(source, position, chunkSize)) > 0) {
+				position += count;
+			}
+			channel.force(false);
+			return position;
+		} finally {
+			content.close();
+		}
+	}
+
+	/* a Content-Range such as "bytes 0-99/1000", where the length may be "*" if unknown */
+	static boolean matches(final String contentRange, final Range range, final long length) {
+		final String value = contentRange.trim();
+		if (!value.startsWith("bytes ")) {
+			return false;
+		}
+		final int dash = value.indexOf('-');
+		final int slash = value.indexOf('/');
+		if (dash < 0 || slash < dash) {
+			return false;
+		}
+		try {
+			final long first = Long.parseLong(value.substring("bytes ".length(), dash).trim());
+			final long last = Long.parseLong(value.substring(dash + 1, slash).trim());
+			final String total = value.substring(slash + 1).trim();
+			return first == range.first && last == range.last && (total.equals("*") || Long.parseLong(total) == length);
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	private static long contentLength(final HttpResponse resp) {
+		final Header header = resp.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+		if (header == null) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(header.getValue().trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
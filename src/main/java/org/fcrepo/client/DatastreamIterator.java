@@ -0,0 +1,141 @@
+package org.fcrepo.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.AbortableHttpRequest;
+import org.fcrepo.jaxb.responses.access.ObjectDatastreams.DatastreamElement;
+
+/**
+ * Pull-parses an object's datastream listing, unmarshalling one <code>datastream</code>
+ * element at a time, so memory use does not depend on the number of datastreams.
+ * <p>
+ * The iterator closes itself once the listing is exhausted. Callers which stop early must
+ * call {@link #close()} to release the underlying connection.
+ */
+public class DatastreamIterator implements Iterator<DatastreamElement>, Closeable {
+
+	private static final String ELEMENT_OBJECT = "objectDatastreams";
+	private static final String ELEMENT_DATASTREAM = "datastream";
+
+	private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+	static {
+		INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+
+	private final InputStream in;
+	private final XMLStreamReader reader;
+	private final UnmarshallerPool unmarshallers;
+	private final Unmarshaller unmarshaller;
+	private final AbortableHttpRequest request;
+	private String pid;
+	private DatastreamElement next;
+	private boolean exhausted;
+	private boolean closed;
+
+	DatastreamIterator(InputStream in, UnmarshallerPool unmarshallers, AbortableHttpRequest request) throws IOException {
+		this.in = in;
+		this.unmarshallers = unmarshallers;
+		this.request = request;
+		try {
+			this.reader = INPUT_FACTORY.createXMLStreamReader(in);
+			this.unmarshaller = unmarshallers.borrow();
+		} catch (XMLStreamException e) {
+			IOUtils.closeQuietly(in);
+			throw new IOException("Unable to parse object datastreams", e);
+		} catch (JAXBException e) {
+			IOUtils.closeQuietly(in);
+			throw new IOException("Unable to parse object datastreams", e);
+		}
+	}
+
+	/**
+	 * @return the pid of the object, once the start of the listing has been read
+	 */
+	public String getPid() {
+		return pid;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null && !exhausted) {
+			try {
+				next = readDatastream();
+			} catch (XMLStreamException e) {
+				close();
+				throw new IllegalStateException("Unable to parse object datastreams", e);
+			} catch (JAXBException e) {
+				close();
+				throw new IllegalStateException("Unable to deserialize object datastreams", e);
+			}
+			if (next == null) {
+				exhausted = true;
+				close();
+			}
+		}
+		return next != null;
+	}
+
+	@Override
+	public DatastreamElement next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		DatastreamElement ds = next;
+		next = null;
+		return ds;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("The datastream listing is read only");
+	}
+
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (!exhausted && request != null) {
+			request.abort();
+		}
+		try {
+			reader.close();
+		} catch (XMLStreamException e) {
+			// nothing more to read
+		}
+		IOUtils.closeQuietly(in);
+		unmarshallers.release(unmarshaller);
+	}
+
+	private DatastreamElement readDatastream() throws XMLStreamException, JAXBException {
+		while (true) {
+			if (reader.isStartElement()) {
+				if (ELEMENT_DATASTREAM.equals(reader.getLocalName())) {
+					/* leaves the reader on the event following the end of the element */
+					return unmarshaller.unmarshal(reader, DatastreamElement.class).getValue();
+				}
+				if (ELEMENT_OBJECT.equals(reader.getLocalName())) {
+					pid = reader.getAttributeValue(null, "pid");
+				}
+			}
+			if (!reader.hasNext()) {
+				return null;
+			}
+			reader.next();
+		}
+	}
+}
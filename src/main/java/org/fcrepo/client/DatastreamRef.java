@@ -0,0 +1,45 @@
+package org.fcrepo.client;
+
+/**
+ * Identifies a datastream by the pid of its object and its dsid.
+ */
+public class DatastreamRef {
+
+	private final String pid;
+	private final String dsId;
+
+	public DatastreamRef(String pid, String dsId) {
+		if (pid == null || dsId == null) {
+			throw new IllegalArgumentException("Both the pid and the dsid are required");
+		}
+		this.pid = pid;
+		this.dsId = dsId;
+	}
+
+	public String getPid() {
+		return pid;
+	}
+
+	public String getDsId() {
+		return dsId;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof DatastreamRef)) {
+			return false;
+		}
+		final DatastreamRef ref = (DatastreamRef) other;
+		return pid.equals(ref.pid) && dsId.equals(ref.dsId);
+	}
+
+	@Override
+	public int hashCode() {
+		return pid.hashCode() * 31 + dsId.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return pid + "/" + dsId;
+	}
+}
@@ -0,0 +1,18 @@
+package org.fcrepo.client;
+
+/**
+ * Receives the progress of a {@link RepositoryExport}. Implementations are called
+ * concurrently from the export's worker threads.
+ */
+public interface ExportListener {
+
+	/**
+	 * @param bytes the size of the datastream content written for the object
+	 */
+	void objectExported(String pid, int datastreams, long bytes);
+
+	/**
+	 * @param dsId the datastream which could not be exported, or null if the object itself failed
+	 */
+	void exportFailed(String pid, String dsId, Exception cause);
+}
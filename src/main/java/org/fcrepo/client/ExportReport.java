@@ -0,0 +1,61 @@
+package org.fcrepo.client;
+
+/**
+ * A snapshot of the progress of a {@link RepositoryExport}.
+ */
+public class ExportReport {
+
+	private final long objects;
+	private final long skippedObjects;
+	private final long datastreams;
+	private final long bytes;
+	private final long failures;
+	private final long elapsedMillis;
+
+	ExportReport(long objects, long skippedObjects, long datastreams, long bytes, long failures, long elapsedMillis) {
+		this.objects = objects;
+		this.skippedObjects = skippedObjects;
+		this.datastreams = datastreams;
+		this.bytes = bytes;
+		this.failures = failures;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/** @return the number of objects exported by this run */
+	public long getObjects() {
+		return objects;
+	}
+
+	/** @return the number of objects skipped because an earlier run exported them */
+	public long getSkippedObjects() {
+		return skippedObjects;
+	}
+
+	public long getDatastreams() {
+		return datastreams;
+	}
+
+	/** @return the number of bytes of datastream content written */
+	public long getBytes() {
+		return bytes;
+	}
+
+	public long getFailures() {
+		return failures;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/** @return the bytes of content written per second */
+	public double getThroughput() {
+		return (elapsedMillis > 0) ? bytes * 1000d / elapsedMillis : 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d objects (%d skipped), %d datastreams, %d bytes, %d failures in %d ms (%.1f MB/s)",
+				objects, skippedObjects, datastreams, bytes, failures, elapsedMillis, getThroughput() / (1024 * 1024));
+	}
+}
@@ -1,22 +1,50 @@
 package org.fcrepo.client;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URI;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.entity.DeflateDecompressingEntity;
+import org.apache.http.client.entity.GzipDecompressingEntity;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
 import org.fcrepo.jaxb.responses.access.ObjectDatastreams;
+import org.fcrepo.jaxb.responses.access.ObjectDatastreams.DatastreamElement;
 import org.fcrepo.jaxb.responses.access.ObjectProfile;
 import org.fcrepo.jaxb.responses.management.DatastreamFixity;
 import org.fcrepo.jaxb.responses.management.DatastreamProfile;
@@ -30,17 +58,248 @@ public class FedoraClient {
 	static final String PATH_DATASTREAM_CONTENT = "content";
 	static final String PATH_DATASTREAM_FIXITY = "fixity";
 
-	private HttpClient client = new DefaultHttpClient();
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 50;
+	public static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 200;
+	public static final long DEFAULT_KEEP_ALIVE_MILLIS = 30000;
+	public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+
+	static final int UNMARSHALLER_POOL_SIZE = 64;
+	static final String ACCEPT_ENCODING = "gzip,deflate";
+
+	private final Transport transport;
 	private URI fedoraUri;
+	private ExecutorService executor;
+	private boolean ownsExecutor;
+	private boolean virtualThreads;
+	private volatile ResponseCache responseCache;
+	private volatile RequestCoalescer coalescer;
+	private volatile RequestListener requestListener;
+	private volatile CircuitBreaker circuitBreaker;
+	private volatile AdaptiveConcurrencyLimiter concurrencyLimiter;
+	private volatile ContentCache contentCache;
+	private volatile RetryPolicy retryPolicy;
+	private volatile HedgingPolicy hedgingPolicy;
+	private volatile boolean compression = true;
+	private volatile boolean contentCompression;
+	private ExecutorService hedgingExecutor;
+	private final Semaphore hedgingPermits;
 
-	private Unmarshaller unmarshaller;
+	/* JAXBContext is expensive to build and thread-safe, so it is shared by all clients in the JVM */
+	private static volatile JAXBContext context;
+	private static volatile UnmarshallerPool unmarshallers;
 
 	public FedoraClient() {
-		super();
+		this(DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_MAX_CONNECTIONS_TOTAL);
+	}
+
+	public FedoraClient(int maxConnectionsPerRoute, int maxConnectionsTotal) {
+		this(maxConnectionsPerRoute, maxConnectionsTotal, DEFAULT_KEEP_ALIVE_MILLIS, DEFAULT_IDLE_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * Create a client backed by a pooled connection manager which can be shared by many threads.
+	 * @param maxConnectionsPerRoute the maximum number of concurrent connections to the repository host
+	 * @param maxConnectionsTotal the maximum number of concurrent connections overall
+	 * @param keepAliveMillis how long to keep an idle connection alive when the server does not say
+	 * @param idleTimeoutMillis how long a connection may sit idle in the pool before it is evicted
+	 */
+	public FedoraClient(int maxConnectionsPerRoute, int maxConnectionsTotal, long keepAliveMillis, long idleTimeoutMillis) {
+		this(new ApacheTransport(maxConnectionsPerRoute, maxConnectionsTotal, keepAliveMillis, idleTimeoutMillis));
+	}
+
+	/**
+	 * Create a client which sends its requests over the given transport, and shuts it down with the client.
+	 */
+	public FedoraClient(Transport transport) {
+		this.transport = transport;
+		this.hedgingPermits = new Semaphore(transport.getMaxConcurrency());
 	}
 	
 	FedoraClient(HttpClient client) {
-		this.client = client;
+		this(new ApacheTransport(client));
+	}
+
+	/**
+	 * Shut down the transport and the threads running asynchronous operations.
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			if (ownsExecutor) {
+				executor.shutdown();
+			}
+			if (hedgingExecutor != null) {
+				hedgingExecutor.shutdown();
+			}
+		}
+		transport.shutdown();
+	}
+
+	/**
+	 * Set the executor that runs the asynchronous operations. The client does not shut
+	 * down an executor it did not create.
+	 */
+	public synchronized void setExecutor(ExecutorService executor) {
+		if (ownsExecutor) {
+			this.executor.shutdown();
+		}
+		this.executor = executor;
+		this.ownsExecutor = false;
+		this.virtualThreads = false;
+		resetHedgingExecutor();
+	}
+
+	synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			int threads = transport.getMaxConcurrency();
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("fcrepo-client-async"));
+			pool.allowCoreThreadTimeOut(true);
+			executor = pool;
+			ownsExecutor = true;
+		}
+		return executor;
+	}
+
+	/**
+	 * Enable caching of object profiles, datastream lists and datastream profiles. Cached
+	 * responses are revalidated with a conditional GET on every call and are only unmarshalled
+	 * again when the repository reports a change.
+	 * @param responseCache the cache to use, or null to disable caching
+	 */
+	public void setResponseCache(ResponseCache responseCache) {
+		this.responseCache = responseCache;
+	}
+
+	public ResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+	/**
+	 * When enabled, concurrent requests for the same object profile, datastream list or
+	 * datastream profile are sent to the repository once and all callers receive the same,
+	 * shared result object.
+	 */
+	public void setCoalesceRequests(boolean coalesce) {
+		this.coalescer = coalesce ? new RequestCoalescer() : null;
+	}
+
+	/**
+	 * Set a listener to receive latency, status, size and connection pool measurements
+	 * for every request, or null to stop measuring.
+	 */
+	public void setRequestListener(RequestListener requestListener) {
+		this.requestListener = requestListener;
+	}
+
+	/**
+	 * Fail requests fast while the repository keeps failing, or null to always send requests.
+	 */
+	public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	/**
+	 * Adapt the number of concurrent requests to the repository's observed latency, or null
+	 * to only be limited by the connection pool.
+	 */
+	public void setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+		this.concurrencyLimiter = concurrencyLimiter;
+	}
+
+	/**
+	 * Keep datastream content on local disk, or null to always read it from the repository.
+	 * @see #getDatastreamContent(String, String, DatastreamProfile)
+	 */
+	public void setContentCache(ContentCache contentCache) {
+		this.contentCache = contentCache;
+	}
+
+	/**
+	 * Retry failed reads of profiles, datastream lists and fixity with jittered backoff,
+	 * or null to report the first failure.
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	/**
+	 * Send a duplicate of slow reads of profiles, datastream lists and fixity, or null to never hedge.
+	 * Hedged reads in flight are bounded by the transport's {@link Transport#getMaxConcurrency() concurrency},
+	 * and reads beyond it are sent without a hedge.
+	 */
+	public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+		this.hedgingPolicy = hedgingPolicy;
+	}
+
+	/**
+	 * Ask the repository to gzip or deflate profiles, datastream lists, fixity results and the
+	 * object list, which are decompressed as they are parsed. Enabled by default.
+	 */
+	public void setCompression(boolean compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * Ask the repository to compress datastream content as well, which only pays off for
+	 * uncompressed text content over a slow link. Disabled by default, and never applied to
+	 * range requests. Content is always returned decompressed.
+	 */
+	public void setContentCompression(boolean contentCompression) {
+		this.contentCompression = contentCompression;
+	}
+
+	/**
+	 * Run the asynchronous operations and the bulk helpers on a new virtual thread per task
+	 * instead of a pool of platform threads. Blocking requests then cost little more than their
+	 * connection, and concurrency is bounded by the transport rather than by the executor. The
+	 * client waits on locks and parks rather than holding monitors while it blocks, so virtual
+	 * threads are not pinned to their carriers.
+	 * @throws UnsupportedOperationException if the JVM has no virtual threads
+	 * @see #isVirtualThreadsSupported()
+	 */
+	public synchronized void setVirtualThreads(boolean virtualThreads) {
+		final ExecutorService replacement = virtualThreads ? VirtualThreads.newExecutor("fcrepo-client-virtual-") : null;
+		if (ownsExecutor) {
+			executor.shutdown();
+		}
+		this.executor = replacement;
+		this.ownsExecutor = virtualThreads;
+		this.virtualThreads = virtualThreads;
+		resetHedgingExecutor();
+	}
+
+	/* rebuilt on next use in the current mode, while attempts already running finish on the old one */
+	private void resetHedgingExecutor() {
+		if (hedgingExecutor != null) {
+			hedgingExecutor.shutdown();
+			hedgingExecutor = null;
+		}
+	}
+
+	/**
+	 * @return true if the JVM has virtual threads, which arrived in Java 21
+	 */
+	public static boolean isVirtualThreadsSupported() {
+		return VirtualThreads.isAvailable();
+	}
+
+	/*
+	 * hedged attempts get their own threads so that they never queue behind the callers waiting for them,
+	 * and take a permit first so there are never more of them than the transport can carry
+	 */
+	synchronized ExecutorService getHedgingExecutor() {
+		if (hedgingExecutor == null) {
+			if (virtualThreads) {
+				hedgingExecutor = VirtualThreads.newExecutor("fcrepo-client-hedge-");
+			} else {
+				int threads = transport.getMaxConcurrency();
+				ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+						new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("fcrepo-client-hedge"));
+				pool.allowCoreThreadTimeOut(true);
+				hedgingExecutor = pool;
+			}
+		}
+		return hedgingExecutor;
 	}
 
 	public void setFedoraUri(String fedoraUri) {
@@ -58,15 +317,35 @@ public class FedoraClient {
 	}
 	
 	JAXBContext getContext() throws JAXBException {
-		return JAXBContext.newInstance(ObjectProfile.class, ObjectDatastreams.class, DatastreamProfile.class, DatastreamFixity.class);
+		JAXBContext ctx = context;
+		if (ctx == null) {
+			synchronized (FedoraClient.class) {
+				ctx = context;
+				if (ctx == null) {
+					ctx = JAXBContext.newInstance(ObjectProfile.class, ObjectDatastreams.class, DatastreamProfile.class, DatastreamFixity.class);
+					unmarshallers = new UnmarshallerPool(ctx, UNMARSHALLER_POOL_SIZE);
+					context = ctx;
+				}
+			}
+		}
+		return ctx;
+	}
+
+	UnmarshallerPool getUnmarshallerPool() throws JAXBException {
+		getContext();
+		return unmarshallers;
 	}
 
+	/**
+	 * Borrow an unmarshaller for the exclusive use of the calling thread.
+	 * It should be handed back with {@link #releaseUnmarshaller(Unmarshaller)}.
+	 */
 	Unmarshaller getUnmarshaller() throws JAXBException {
-		if (unmarshaller == null) {
-			unmarshaller = 
-					getContext().createUnmarshaller();
-		}
-		return unmarshaller;
+		return getUnmarshallerPool().borrow();
+	}
+
+	void releaseUnmarshaller(Unmarshaller unmarshaller) throws JAXBException {
+		getUnmarshallerPool().release(unmarshaller);
 	}
 	
 	HttpGet getObjectProfileRequest(String id) {
@@ -75,19 +354,7 @@ public class FedoraClient {
 	}
 
 	public ObjectProfile getObjectProfile(final String id) throws IOException {
-		final HttpGet get = getObjectProfileRequest(id);
-		final HttpResponse resp = client.execute(get);
-		if (resp.getStatusLine().getStatusCode() != 200) {
-			throw new HttpResponseException(resp.getStatusLine().getStatusCode(), "Unable to fetch object profile from fedora: " + resp.getStatusLine().getReasonPhrase());
-		}
-		try {
-			ObjectProfile profile = (ObjectProfile) this.getUnmarshaller().unmarshal(resp.getEntity().getContent());
-			return profile;
-		} catch (JAXBException e) {
-			throw new IOException("Unable to deserialize object profile", e);
-		} finally {
-			IOUtils.closeQuietly(resp.getEntity().getContent());
-		}
+		return fetch(Operation.OBJECT_PROFILE, getObjectProfileRequest(id), ObjectProfile.class);
 	}
 	
 	HttpGet getObjectDatastreamsRequest(String objectId) {
@@ -97,18 +364,26 @@ public class FedoraClient {
 	}
 
 	public ObjectDatastreams getObjectDatastreams(final String objectId) throws IOException {
+		return fetch(Operation.OBJECT_DATASTREAMS, getObjectDatastreamsRequest(objectId), ObjectDatastreams.class);
+	}
+	
+	/**
+	 * Stream an object's datastreams one at a time as they are parsed off the response,
+	 * instead of unmarshalling the whole listing. The iterator must be closed if it is not
+	 * read to the end. Responses are not cached or coalesced.
+	 */
+	public DatastreamIterator iterateObjectDatastreams(final String objectId) throws IOException {
 		final HttpGet get = getObjectDatastreamsRequest(objectId);
-		final HttpResponse resp = client.execute(get);
+		final HttpResponse resp = execute(Operation.OBJECT_DATASTREAMS, get);
 		if (resp.getStatusLine().getStatusCode() != 200) {
+			release(resp);
 			throw new HttpResponseException(resp.getStatusLine().getStatusCode(), "Unable to fetch object datastreams from fedora: " + resp.getStatusLine().getReasonPhrase());
 		}
 		try {
-			ObjectDatastreams datastreams = (ObjectDatastreams) this.getUnmarshaller().unmarshal(resp.getEntity().getContent());
-			return datastreams;
+			return new DatastreamIterator(resp.getEntity().getContent(), getUnmarshallerPool(), get);
 		} catch (JAXBException e) {
+			release(resp);
 			throw new IOException("Unable to deserialize object datastreams", e);
-		} finally {
-			IOUtils.closeQuietly(resp.getEntity().getContent());
 		}
 	}
 	
@@ -118,38 +393,246 @@ public class FedoraClient {
 	}
 
 	public DatastreamProfile getDatastreamProfile(final String objectId, final String dsId) throws IOException {
-		final HttpGet get = getDatastreamProfileRequest(objectId, dsId);
-		final HttpResponse resp = client.execute(get);
-		if (resp.getStatusLine().getStatusCode() != 200) {
-			throw new HttpResponseException(resp.getStatusLine().getStatusCode(), "Unable to fetch datastream profile from fedora: " + resp.getStatusLine().getReasonPhrase());
-		}
+		return fetch(Operation.DATASTREAM_PROFILE, getDatastreamProfileRequest(objectId, dsId), DatastreamProfile.class);
+	}
+	
+	/**
+	 * Fetch an object's profile and the profiles of all of its datastreams. The object profile
+	 * is requested alongside the datastream listing, and the datastream profiles are all
+	 * requested concurrently on the executor as soon as the listing arrives, so the whole graph
+	 * costs about two round trips instead of one per datastream.
+	 */
+	public ObjectGraph getObjectGraph(final String objectId) throws IOException {
+		final Future<ObjectProfile> profile = getObjectProfileAsync(objectId);
 		try {
-			DatastreamProfile ds = (DatastreamProfile) this.getUnmarshaller().unmarshal(resp.getEntity().getContent());
-			return ds;
-		} catch (JAXBException e) {
-			throw new IOException("Unable to deserialize datastream profile", e);
+			final Map<String, DatastreamProfile> datastreams = getAllDatastreamProfiles(objectId);
+			return new ObjectGraph(profile.get(), datastreams);
+		} catch (ExecutionException e) {
+			throw launder(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while fetching " + objectId);
 		} finally {
-			IOUtils.closeQuietly(resp.getEntity().getContent());
+			/* a no-op once the profile has arrived, and spares the repository the request after a failure */
+			profile.cancel(false);
 		}
+	}
 
+	/**
+	 * Fetch the profiles of all of an object's datastreams to go with a profile the caller already holds.
+	 */
+	public ObjectGraph getObjectGraph(final String objectId, final ObjectProfile profile) throws IOException {
+		return new ObjectGraph(profile, getAllDatastreamProfiles(objectId));
 	}
-	
+
+	private Map<String, DatastreamProfile> getAllDatastreamProfiles(final String objectId) throws IOException {
+		final ObjectDatastreams list = getObjectDatastreams(objectId);
+		if (list.datastreams == null) {
+			return new LinkedHashMap<String, DatastreamProfile>();
+		}
+		final List<String> dsIds = new ArrayList<String>(list.datastreams.size());
+		for (DatastreamElement ds : list.datastreams) {
+			dsIds.add(ds.dsid);
+		}
+		/* the listing is unmarshalled into a set, so it has no order of its own */
+		Collections.sort(dsIds);
+		return getDatastreamProfiles(objectId, dsIds);
+	}
+
+	/**
+	 * Fetch the profiles of many objects at once on the executor. This suits blocking callers,
+	 * particularly with {@link #setVirtualThreads(boolean) virtual threads}.
+	 * @return the profiles keyed by pid, in the iteration order of the pids
+	 * @throws IOException the first failure, after which requests not yet started are cancelled
+	 */
+	public Map<String, ObjectProfile> getObjectProfiles(final Collection<String> pids) throws IOException {
+		final Map<String, Future<ObjectProfile>> futures = new LinkedHashMap<String, Future<ObjectProfile>>(pids.size() * 2);
+		for (String pid : pids) {
+			if (!futures.containsKey(pid)) {
+				futures.put(pid, getObjectProfileAsync(pid));
+			}
+		}
+		return awaitAll(futures);
+	}
+
+	/**
+	 * Fetch the profiles of many datastreams of an object at once on the executor.
+	 * @return the profiles keyed by dsid, in the iteration order of the dsids
+	 * @throws IOException the first failure, after which requests not yet started are cancelled
+	 */
+	public Map<String, DatastreamProfile> getDatastreamProfiles(final String objectId, final Collection<String> dsIds) throws IOException {
+		final Map<String, Future<DatastreamProfile>> futures = new LinkedHashMap<String, Future<DatastreamProfile>>(dsIds.size() * 2);
+		for (String dsId : dsIds) {
+			if (!futures.containsKey(dsId)) {
+				futures.put(dsId, getDatastreamProfileAsync(objectId, dsId));
+			}
+		}
+		return awaitAll(futures);
+	}
+
 	HttpGet getDatastreamContentRequest(String objectId, String dsId) {
 		String[] parts = new String[]{fedoraUri.toASCIIString(), PATH_OBJECT_PROFILE, objectId, PATH_DATASTREAMS, dsId,
 				PATH_DATASTREAM_CONTENT};
 		return new HttpGet(buildURI(parts));
 	}
 
+	/**
+	 * Fetch the content of a datastream. The caller must close the returned stream to 
+	 * release the underlying connection back to the pool.
+	 */
 	public InputStream getDatastreamContent(final String objectId, final String dsId) throws IOException {
+		return getDatastreamContent(objectId, dsId, true);
+	}
+
+	private InputStream getDatastreamContent(final String objectId, final String dsId, final boolean conditional) throws IOException {
 		final HttpGet get = getDatastreamContentRequest(objectId, dsId);
-		final HttpResponse resp = client.execute(get);
+		final ContentCache cache = this.contentCache;
+		final String uri = get.getURI().toString();
+		final String etag = (cache != null && conditional) ? cache.getETag(uri) : null;
+		if (etag != null) {
+			get.setHeader(HttpHeaders.IF_NONE_MATCH, etag);
+		}
+		final HttpResponse resp = execute(Operation.DATASTREAM_CONTENT, get);
+		if (etag != null && resp.getStatusLine().getStatusCode() == 304) {
+			release(resp);
+			final InputStream cached = cache.get(ContentCache.etagKey(uri, etag));
+			/* evicted since the request was sent, or deleted from disk, so ask once more without the condition */
+			return (cached != null) ? cached : getDatastreamContent(objectId, dsId, false);
+		}
+		if (resp.getStatusLine().getStatusCode() != 200) {
+			release(resp);
+			throw new HttpResponseException(resp.getStatusLine().getStatusCode(), "Unable to fetch datastream content from fedora: " + resp.getStatusLine().getReasonPhrase());
+		}
+		final String responseETag = headerValue(resp, HttpHeaders.ETAG);
+		if (cache != null && responseETag != null) {
+			return cache.cache(uri, responseETag, resp.getEntity().getContent());
+		}
+		return resp.getEntity().getContent();
+	}
+
+	/**
+	 * Fetch the content of a datastream whose profile the caller already holds. With a content
+	 * cache, content with a checksum is served from disk without contacting the repository once
+	 * it has been read, and is only cached after it has been verified against the checksum.
+	 */
+	public InputStream getDatastreamContent(final String objectId, final String dsId, final DatastreamProfile profile) throws IOException {
+		final ContentCache cache = this.contentCache;
+		final String algorithm = checksumAlgorithm(profile);
+		final String checksum = (algorithm != null) ? checksum(profile) : null;
+		if (cache == null || checksum == null) {
+			return getDatastreamContent(objectId, dsId);
+		}
+		final String key = ContentCache.checksumKey(algorithm + ":" + checksum);
+		final InputStream cached = cache.get(key);
+		if (cached != null) {
+			return cached;
+		}
+		final InputStream content = getDatastreamContentUncached(objectId, dsId);
+		try {
+			return cache.cache(key, new VerifyingInputStream(content, algorithm, checksum));
+		} catch (IOException e) {
+			content.close();
+			throw e;
+		}
+	}
+
+	private InputStream getDatastreamContentUncached(final String objectId, final String dsId) throws IOException {
+		final HttpGet get = getDatastreamContentRequest(objectId, dsId);
+		final HttpResponse resp = execute(Operation.DATASTREAM_CONTENT, get);
 		if (resp.getStatusLine().getStatusCode() != 200) {
-			resp.getEntity().getContent().close();
+			release(resp);
 			throw new HttpResponseException(resp.getStatusLine().getStatusCode(), "Unable to fetch datastream content from fedora: " + resp.getStatusLine().getReasonPhrase());
 		}
 		return resp.getEntity().getContent();
 	}
 	
+	/**
+	 * Fetch the content of a datastream, verifying it against the checksum in its profile
+	 * as it is read. A mismatch surfaces as a {@link FixityException} when the stream reaches its end.
+	 * @param algorithms additional digests to compute while reading, such as "SHA-256" or "MD5"
+	 */
+	public VerifyingInputStream getVerifiedDatastreamContent(final String objectId, final String dsId, final String... algorithms) throws IOException {
+		return getVerifiedDatastreamContent(objectId, dsId, getDatastreamProfile(objectId, dsId), algorithms);
+	}
+
+	/**
+	 * Fetch the content of a datastream, verifying it against the checksum in a profile the caller already holds.
+	 */
+	public VerifyingInputStream getVerifiedDatastreamContent(final String objectId, final String dsId, final DatastreamProfile profile, final String... algorithms) throws IOException {
+		final ContentCache cache = this.contentCache;
+		final String algorithm = checksumAlgorithm(profile);
+		final String checksum = (algorithm != null) ? checksum(profile) : null;
+		if (cache == null || checksum == null) {
+			return verify(getDatastreamContent(objectId, dsId), algorithm, checksum, algorithms);
+		}
+		final String key = ContentCache.checksumKey(algorithm + ":" + checksum);
+		final InputStream cached = cache.get(key);
+		if (cached != null) {
+			return verify(cached, algorithm, checksum, algorithms);
+		}
+		/* verified once on the way through, and only cached if it passes */
+		final InputStream content = cache.cacheOnCommit(key, getDatastreamContentUncached(objectId, dsId));
+		try {
+			return new VerifyingInputStream(content, algorithm, checksum, algorithms) {
+				@Override
+				public int read() throws IOException {
+					final int b = super.read();
+					if (b == -1) {
+						cache.commit(content);
+					}
+					return b;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					final int n = super.read(b, off, len);
+					if (n == -1) {
+						cache.commit(content);
+					}
+					return n;
+				}
+			};
+		} catch (IOException e) {
+			content.close();
+			throw e;
+		}
+	}
+
+	private static VerifyingInputStream verify(final InputStream content, final String algorithm, final String checksum, final String... algorithms) throws IOException {
+		try {
+			return new VerifyingInputStream(content, algorithm, checksum, algorithms);
+		} catch (IOException e) {
+			content.close();
+			throw e;
+		}
+	}
+
+	private static String checksumAlgorithm(final DatastreamProfile profile) {
+		final String algorithm = profile.dsChecksumType;
+		if (algorithm == null || algorithm.equalsIgnoreCase("DISABLED") || algorithm.equalsIgnoreCase("NONE")) {
+			return null;
+		}
+		return algorithm;
+	}
+
+	private static String checksum(final DatastreamProfile profile) {
+		if (profile.dsChecksum == null) {
+			return null;
+		}
+		/* checksums may be given as URNs such as urn:sha1:... */
+		final String checksum = profile.dsChecksum.toString();
+		return checksum.substring(checksum.lastIndexOf(':') + 1);
+	}
+
+	/**
+	 * Download the content of a datastream to a file using parallel range requests,
+	 * with the default chunk size and concurrency of {@link DatastreamDownload}.
+	 * @return the number of bytes written
+	 */
+	public long downloadDatastreamContent(final String objectId, final String dsId, final File target) throws IOException {
+		return new DatastreamDownload(this, objectId, dsId).downloadTo(target);
+	}
+	
 	HttpGet getDatastreamFixityRequest(String objectId, String dsId) {
 		String[] parts = new String[]{fedoraUri.toASCIIString(), PATH_OBJECT_PROFILE, objectId, PATH_DATASTREAMS, dsId,
 				PATH_DATASTREAM_FIXITY};
@@ -157,19 +640,7 @@ public class FedoraClient {
 	}
 	
 	public DatastreamFixity getDatastreamFixity(final String objectId, final String dsId) throws IOException {
-		final HttpGet get = getDatastreamFixityRequest(objectId, dsId);
-		final HttpResponse resp = client.execute(get);
-		if (resp.getStatusLine().getStatusCode() != 200) {
-			throw new HttpResponseException(resp.getStatusLine().getStatusCode(), "Unable to fetch datastream fixity from fedora: " + resp.getStatusLine().getReasonPhrase());
-		}
-		try {
-			DatastreamFixity df = (DatastreamFixity) this.getUnmarshaller().unmarshal(resp.getEntity().getContent());
-			return df;
-		} catch (JAXBException e) {
-			throw new IOException("Unable to deserialize datastream fixity", e);
-		} finally {
-			IOUtils.closeQuietly(resp.getEntity().getContent());
-		}
+		return fetch(Operation.DATASTREAM_FIXITY, getDatastreamFixityRequest(objectId, dsId), DatastreamFixity.class);
 	}
 	
 	HttpGet getPidsRequest() {
@@ -177,25 +648,481 @@ public class FedoraClient {
 		return new HttpGet(buildURI(parts));
 	}
 
+	/**
+	 * Fetch the pids of all objects in the repository. For large repositories prefer
+	 * {@link #iteratePids()}, which does not hold the whole list in memory.
+	 * @return the pids, or an empty list if the repository holds no objects
+	 */
 	public List<String> getPids() throws IOException {
+		final PidIterator pids = iteratePids();
+		try {
+			final List<String> result = new ArrayList<String>();
+			while (pids.hasNext()) {
+				result.add(pids.next());
+			}
+			return result;
+		} catch (IllegalStateException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		} finally {
+			pids.close();
+		}
+	}
+
+	/**
+	 * Stream the pids of all objects in the repository as they are read off the response.
+	 * The iterator must be closed if it is not read to the end.
+	 */
+	public PidIterator iteratePids() throws IOException {
 		final HttpGet get = getPidsRequest();
-		final HttpResponse resp = client.execute(get);
+		final HttpResponse resp = execute(Operation.PIDS, get);
 		if (resp.getStatusLine().getStatusCode() != 200) {
-			resp.getEntity().getContent().close();
+			release(resp);
 			throw new HttpResponseException(resp.getStatusLine().getStatusCode(), "Unable to fetch object list from fedora: " + resp.getStatusLine().getReasonPhrase());
 		}
-		String data = IOUtils.toString(resp.getEntity().getContent());
+		return new PidIterator(resp.getEntity().getContent(), get);
+	}
 
-		/* fedora4 returns a JSON array of strings in square brackets 
-		/* e.g. [pid1,pid2] */ 
-		/* so strip the square brackets */
-		/* and return the split */
-		if (data.length() == 2){
-			/* the empty "[]" set so we return null */
-			return null;
+	public Future<ObjectProfile> getObjectProfileAsync(final String id) {
+		return getObjectProfileAsync(id, null);
+	}
+
+	public Future<ObjectProfile> getObjectProfileAsync(final String id, final FutureCallback<ObjectProfile> callback) {
+		return submit(new Callable<ObjectProfile>() {
+			@Override
+			public ObjectProfile call() throws IOException {
+				return getObjectProfile(id);
+			}
+		}, callback);
+	}
+
+	public Future<ObjectDatastreams> getObjectDatastreamsAsync(final String objectId) {
+		return getObjectDatastreamsAsync(objectId, null);
+	}
+
+	public Future<ObjectDatastreams> getObjectDatastreamsAsync(final String objectId, final FutureCallback<ObjectDatastreams> callback) {
+		return submit(new Callable<ObjectDatastreams>() {
+			@Override
+			public ObjectDatastreams call() throws IOException {
+				return getObjectDatastreams(objectId);
+			}
+		}, callback);
+	}
+
+	public Future<DatastreamProfile> getDatastreamProfileAsync(final String objectId, final String dsId) {
+		return getDatastreamProfileAsync(objectId, dsId, null);
+	}
+
+	public Future<DatastreamProfile> getDatastreamProfileAsync(final String objectId, final String dsId, final FutureCallback<DatastreamProfile> callback) {
+		return submit(new Callable<DatastreamProfile>() {
+			@Override
+			public DatastreamProfile call() throws IOException {
+				return getDatastreamProfile(objectId, dsId);
+			}
+		}, callback);
+	}
+
+	public Future<InputStream> getDatastreamContentAsync(final String objectId, final String dsId) {
+		return getDatastreamContentAsync(objectId, dsId, null);
+	}
+
+	public Future<InputStream> getDatastreamContentAsync(final String objectId, final String dsId, final FutureCallback<InputStream> callback) {
+		return submit(new Callable<InputStream>() {
+			@Override
+			public InputStream call() throws IOException {
+				return getDatastreamContent(objectId, dsId);
+			}
+		}, callback);
+	}
+
+	public Future<DatastreamFixity> getDatastreamFixityAsync(final String objectId, final String dsId) {
+		return getDatastreamFixityAsync(objectId, dsId, null);
+	}
+
+	public Future<DatastreamFixity> getDatastreamFixityAsync(final String objectId, final String dsId, final FutureCallback<DatastreamFixity> callback) {
+		return submit(new Callable<DatastreamFixity>() {
+			@Override
+			public DatastreamFixity call() throws IOException {
+				return getDatastreamFixity(objectId, dsId);
+			}
+		}, callback);
+	}
+
+	public Future<List<String>> getPidsAsync() {
+		return getPidsAsync(null);
+	}
+
+	public Future<List<String>> getPidsAsync(final FutureCallback<List<String>> callback) {
+		return submit(new Callable<List<String>>() {
+			@Override
+			public List<String> call() throws IOException {
+				return getPids();
+			}
+		}, callback);
+	}
+
+	/* run an operation on the executor, completing the returned future and the optional callback */
+	private <T> Future<T> submit(final Callable<T> operation, final FutureCallback<T> callback) {
+		/* FutureTask parks waiting threads rather than waiting on a monitor, which would pin a virtual thread */
+		final FutureTask<T> future = new FutureTask<T>(operation) {
+			@Override
+			protected void done() {
+				if (callback == null) {
+					return;
+				}
+				if (isCancelled()) {
+					callback.cancelled();
+					return;
+				}
+				try {
+					callback.completed(get());
+				} catch (ExecutionException e) {
+					callback.failed((e.getCause() instanceof Exception) ? (Exception) e.getCause() : e);
+				} catch (InterruptedException e) {
+					/* cannot happen once the task is done */
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		getExecutor().execute(future);
+		return future;
+	}
+
+	/* wait for every result in the order of the map, cancelling the rest after the first failure */
+	private static <T> Map<String, T> awaitAll(final Map<String, Future<T>> futures) throws IOException {
+		final Map<String, T> results = new LinkedHashMap<String, T>(futures.size() * 2);
+		try {
+			for (Map.Entry<String, Future<T>> future : futures.entrySet()) {
+				results.put(future.getKey(), future.getValue().get());
+			}
+			return results;
+		} catch (ExecutionException e) {
+			throw launder(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + futures.size() + " requests");
+		} finally {
+			if (results.size() < futures.size()) {
+				for (Future<T> future : futures.values()) {
+					future.cancel(false);
+				}
+			}
+		}
+	}
+
+	/* execute a GET, sharing the response with identical requests already in flight when coalescing is on */
+	private <T> T fetch(final Operation operation, final HttpGet get, final Class<T> type) throws IOException {
+		final RequestCoalescer coalescer = operation.isCacheable() ? this.coalescer : null;
+		if (coalescer == null) {
+			return fetchWithRetries(operation, get, type);
+		}
+		return coalescer.execute(get.getURI().toString(), new Callable<T>() {
+			@Override
+			public T call() throws IOException {
+				return fetchWithRetries(operation, get, type);
+			}
+		});
+	}
+
+	/* every fetch is an idempotent read, so it may be retried when the retry policy allows */
+	private <T> T fetchWithRetries(final Operation operation, final HttpGet get, final Class<T> type) throws IOException {
+		final RetryPolicy retries = this.retryPolicy;
+		final int attempts = (retries != null) ? retries.getMaxAttempts() : 1;
+		for (int attempt = 1;; attempt++) {
+			try {
+				return fetchHedged(operation, (attempt == 1) ? get : copy(get), type);
+			} catch (IOException e) {
+				if (attempt >= attempts || !retries.isRetryable(e)) {
+					throw e;
+				}
+				try {
+					Thread.sleep(retries.getDelayMillis(attempt));
+				} catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting to retry " + get.getURI());
+				}
+			}
+		}
+	}
+
+	/* send a duplicate request when the first is slower than the hedging policy allows, and take the first response */
+	private <T> T fetchHedged(final Operation operation, final HttpGet get, final Class<T> type) throws IOException {
+		final HedgingPolicy hedging = this.hedgingPolicy;
+		final long delay = (hedging != null) ? hedging.getDelayNanos(operation) : -1;
+		final long start = System.nanoTime();
+		/* with every permit taken, the request is simply sent without a hedge */
+		if (delay < 0 || !hedgingPermits.tryAcquire()) {
+			final T result = fetchResponse(operation, get, type);
+			if (hedging != null) {
+				hedging.record(operation, System.nanoTime() - start);
+			}
+			return result;
+		}
+		final CompletionService<T> attempts = new ExecutorCompletionService<T>(getHedgingExecutor());
+		final Map<Future<T>, HttpGet> requests = new HashMap<Future<T>, HttpGet>(4);
+		attempt(attempts, requests, operation, get, type);
+		Future<T> winner = null;
+		try {
+			Future<T> done = attempts.poll(delay, TimeUnit.NANOSECONDS);
+			if (done == null && hedgingPermits.tryAcquire()) {
+				attempt(attempts, requests, operation, copy(get), type);
+			}
+			IOException failure = null;
+			for (int outstanding = requests.size(); outstanding > 0; outstanding--) {
+				if (done == null) {
+					done = attempts.take();
+				}
+				try {
+					final T result = done.get();
+					winner = done;
+					hedging.record(operation, System.nanoTime() - start);
+					return result;
+				} catch (ExecutionException e) {
+					failure = launder(e);
+				}
+				done = null;
+			}
+			throw failure;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + get.getURI());
+		} finally {
+			for (Map.Entry<Future<T>, HttpGet> request : requests.entrySet()) {
+				if (request.getKey() != winner) {
+					request.getValue().abort();
+				}
+			}
+		}
+	}
+
+	/* submit an attempt holding a hedging permit, which the attempt releases when it finishes */
+	private <T> void attempt(final CompletionService<T> attempts, final Map<Future<T>, HttpGet> requests, final Operation operation, final HttpGet get, final Class<T> type) {
+		try {
+			requests.put(attempts.submit(fetchCall(operation, get, type)), get);
+		} catch (RuntimeException e) {
+			hedgingPermits.release();
+			throw e;
+		}
+	}
+
+	private <T> Callable<T> fetchCall(final Operation operation, final HttpGet get, final Class<T> type) {
+		return new Callable<T>() {
+			@Override
+			public T call() throws IOException {
+				try {
+					return fetchResponse(operation, get, type);
+				} finally {
+					hedgingPermits.release();
+				}
+			}
+		};
+	}
+
+	private static HttpGet copy(final HttpGet get) {
+		final HttpGet copy = new HttpGet(get.getURI());
+		copy.setHeaders(get.getAllHeaders());
+		copy.setParams(get.getParams());
+		return copy;
+	}
+
+	/* unwrap the failure of a task, rethrowing unchecked exceptions as they are */
+	static IOException launder(final ExecutionException e) {
+		final Throwable cause = e.getCause();
+		if (cause instanceof IOException) {
+			return (IOException) cause;
+		}
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return new IOException(cause);
+	}
+
+	/* execute a GET and unmarshal the XML response, always releasing the connection */
+	private <T> T fetchResponse(final Operation operation, final HttpGet get, final Class<T> type) throws IOException {
+		final ResponseCache cache = operation.isCacheable() ? this.responseCache : null;
+		final String key = get.getURI().toString();
+		final ResponseCache.Entry cached = (cache != null) ? cache.get(key) : null;
+		/* a retried or hedged copy carries the conditions of an entry which may have expired since */
+		get.removeHeaders(HttpHeaders.IF_NONE_MATCH);
+		get.removeHeaders(HttpHeaders.IF_MODIFIED_SINCE);
+		if (cached != null) {
+			if (cached.etag != null) {
+				get.setHeader(HttpHeaders.IF_NONE_MATCH, cached.etag);
+			}
+			if (cached.lastModified != null) {
+				get.setHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified);
+			}
+		}
+		final HttpResponse resp = execute(operation, get);
+		try {
+			if (cached != null && resp.getStatusLine().getStatusCode() == 304) {
+				cache.hit();
+				return type.cast(cached.value);
+			}
+			if (resp.getStatusLine().getStatusCode() != 200) {
+				throw new HttpResponseException(resp.getStatusLine().getStatusCode(), "Unable to fetch " + operation.getDescription() + " from fedora: " + resp.getStatusLine().getReasonPhrase());
+			}
+			final RequestListener listener = this.requestListener;
+			final long start = (listener != null) ? System.nanoTime() : 0;
+			final T result;
+			final Unmarshaller unmarshaller = this.getUnmarshaller();
+			try {
+				result = type.cast(unmarshaller.unmarshal(resp.getEntity().getContent()));
+			} finally {
+				releaseUnmarshaller(unmarshaller);
+			}
+			if (listener != null) {
+				listener.responseUnmarshalled(operation, System.nanoTime() - start);
+			}
+			if (cache != null) {
+				cache.miss();
+				cache.put(key, result, headerValue(resp, HttpHeaders.ETAG), headerValue(resp, HttpHeaders.LAST_MODIFIED));
+			}
+			return result;
+		} catch (JAXBException e) {
+			throw new IOException("Unable to deserialize " + operation.getDescription(), e);
+		} finally {
+			release(resp);
+		}
+	}
+
+	private static String headerValue(final HttpResponse resp, final String name) {
+		final Header header = resp.getFirstHeader(name);
+		return (header != null) ? header.getValue() : null;
+	}
+
+	/* every request made by the client goes through here */
+	HttpResponse execute(final Operation operation, final HttpUriRequest request) throws IOException {
+		final RequestListener listener = this.requestListener;
+		final CircuitBreaker breaker = this.circuitBreaker;
+		final AdaptiveConcurrencyLimiter limiter = this.concurrencyLimiter;
+		acceptEncoding(operation, request);
+		if (listener == null && breaker == null && limiter == null) {
+			return decompress(transport.execute(request));
+		}
+		if (breaker != null) {
+			breaker.acquire();
+		}
+		if (limiter != null) {
+			try {
+				limiter.acquire();
+			} catch (InterruptedException e) {
+				if (breaker != null) {
+					breaker.cancel();
+				}
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting to send a request");
+			} catch (RequestRejectedException e) {
+				if (breaker != null) {
+					breaker.cancel();
+				}
+				throw e;
+			}
+		}
+		final PoolStats pool = (listener != null && transport instanceof ApacheTransport) ? ((ApacheTransport) transport).getPoolStats() : null;
+		if (pool != null) {
+			listener.connectionPoolStatus(pool.getLeased(), pool.getPending(), pool.getAvailable(), pool.getMax());
+		}
+		final long start = System.nanoTime();
+		final HttpResponse resp;
+		try {
+			resp = transport.execute(request);
+		} catch (IOException e) {
+			failed(operation, request, e, System.nanoTime() - start, listener, breaker, limiter);
+			throw e;
+		} catch (RuntimeException e) {
+			failed(operation, request, e, System.nanoTime() - start, listener, breaker, limiter);
+			throw e;
+		}
+		final long duration = System.nanoTime() - start;
+		final int status = resp.getStatusLine().getStatusCode();
+		/* server errors and throttling are signs of overload, client errors are not */
+		final boolean healthy = status < 500 && status != 429;
+		if (limiter != null) {
+			limiter.release(duration, healthy);
+		}
+		if (breaker != null) {
+			breaker.record(healthy);
+		}
+		if (listener != null) {
+			listener.requestCompleted(operation, status, duration);
+			if (resp.getEntity() != null) {
+				resp.setEntity(new CountingEntity(resp.getEntity(), operation, listener));
+			}
+		}
+		/* after counting, so the listener sees the bytes that crossed the network */
+		return decompress(resp);
+	}
+
+	/*
+	 * compressed ranges can't be mapped back onto the content, so they are never asked for, and
+	 * a HEAD is sent to learn the length of the content rather than of its compressed form
+	 */
+	private void acceptEncoding(final Operation operation, final HttpUriRequest request) {
+		final boolean compress = (operation == Operation.DATASTREAM_CONTENT) ? contentCompression : compression;
+		if (compress && !HttpHead.METHOD_NAME.equals(request.getMethod())
+				&& !request.containsHeader(HttpHeaders.ACCEPT_ENCODING) && !request.containsHeader(HttpHeaders.RANGE)) {
+			request.setHeader(HttpHeaders.ACCEPT_ENCODING, ACCEPT_ENCODING);
+		}
+	}
+
+	/* replace a compressed entity with one which inflates the content as it is read */
+	static HttpResponse decompress(final HttpResponse resp) {
+		final HttpEntity entity = resp.getEntity();
+		final Header encoding = resp.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+		if (entity == null || encoding == null) {
+			return resp;
+		}
+		final String codec = encoding.getValue().trim().toLowerCase(Locale.ENGLISH);
+		if ("gzip".equals(codec) || "x-gzip".equals(codec)) {
+			resp.setEntity(new GzipDecompressingEntity(entity));
+		} else if ("deflate".equals(codec)) {
+			resp.setEntity(new DeflateDecompressingEntity(entity));
+		} else {
+			return resp;
+		}
+		/* these describe the compressed content */
+		resp.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+		resp.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+		resp.removeHeaders(HttpHeaders.CONTENT_MD5);
+		return resp;
+	}
+
+	private static void failed(final Operation operation, final HttpUriRequest request, final Exception cause, final long duration,
+			final RequestListener listener, final CircuitBreaker breaker, final AdaptiveConcurrencyLimiter limiter) {
+		if (request.isAborted()) {
+			/* abandoned by the client, such as the loser of a hedged request, which says nothing about the repository */
+			if (limiter != null) {
+				limiter.cancel();
+			}
+			if (breaker != null) {
+				breaker.cancel();
+			}
+			return;
+		}
+		if (limiter != null) {
+			limiter.release(duration, false);
+		}
+		if (breaker != null) {
+			breaker.record(false);
+		}
+		if (listener != null) {
+			listener.requestFailed(operation, cause, duration);
+		}
+	}
+
+	/* consume whatever is left of the entity so the connection can be reused */
+	static void release(final HttpResponse resp) {
+		try {
+			EntityUtils.consume(resp.getEntity());
+		} catch (IOException e) {
+			// the connection has been closed and will not be reused
 		}
-		data = data.substring(1, data.length() - 1);
-		return Arrays.asList(data.split(","));
 	}
 	
 	private String buildURI(String [] components) {
@@ -0,0 +1,54 @@
+package org.fcrepo.client;
+
+import java.io.IOException;
+
+import org.fcrepo.jaxb.responses.management.DatastreamFixity;
+
+/**
+ * Thrown when content read from the repository does not match its recorded checksum, or
+ * when the repository's own fixity check reports a damaged copy.
+ */
+public class FixityException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String algorithm;
+	private final String expected;
+	private final String actual;
+	private final DatastreamFixity fixity;
+
+	public FixityException(String algorithm, String expected, String actual) {
+		super(algorithm + " checksum mismatch: expected " + expected + " but computed " + actual);
+		this.algorithm = algorithm;
+		this.expected = expected;
+		this.actual = actual;
+		this.fixity = null;
+	}
+
+	public FixityException(DatastreamFixity fixity, String message) {
+		super(message);
+		this.algorithm = null;
+		this.expected = null;
+		this.actual = null;
+		this.fixity = fixity;
+	}
+
+	public String getAlgorithm() {
+		return algorithm;
+	}
+
+	public String getExpected() {
+		return expected;
+	}
+
+	public String getActual() {
+		return actual;
+	}
+
+	/**
+	 * @return the repository's fixity results, or null if the mismatch was found by the client
+	 */
+	public DatastreamFixity getFixity() {
+		return fixity;
+	}
+}
@@ -0,0 +1,131 @@
+package org.fcrepo.client;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Append-only record of the progress of a {@link FixitySweep}. Every datastream whose fixity
+ * was checked successfully is written as a <code>D&lt;tab&gt;pid&lt;tab&gt;dsId&lt;tab&gt;$</code> line and every object
+ * whose datastreams were all checked as an <code>O&lt;tab&gt;pid&lt;tab&gt;$</code> line. Reopening an existing journal
+ * loads these records so an interrupted sweep only revisits the work that is missing. The closing
+ * <code>$</code> marks a record as complete, so a line cut short by an interrupted run is ignored.
+ */
+public class FixityJournal implements Closeable {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String OBJECT = "O";
+	private static final String DATASTREAM = "D";
+	private static final String END = "$";
+
+	private final Set<String> completedObjects = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	/* datastreams are only remembered for objects which are not yet complete */
+	private final ConcurrentHashMap<String, Set<String>> completedDatastreams = new ConcurrentHashMap<String, Set<String>>();
+	private final Writer writer;
+
+	public FixityJournal(File file) throws IOException {
+		final boolean truncated = file.exists() && load(file);
+		this.writer = new OutputStreamWriter(new FileOutputStream(file, true), UTF8);
+		if (truncated) {
+			/* start on a fresh line rather than completing the cut off record */
+			append("\n", true);
+		}
+	}
+
+	/* returns true if the last record was cut off */
+	private boolean load(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+		try {
+			Set<String> objects = new HashSet<String>();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t", -1);
+				if (fields.length == 3 && OBJECT.equals(fields[0]) && END.equals(fields[2])) {
+					objects.add(fields[1]);
+				} else if (fields.length == 4 && DATASTREAM.equals(fields[0]) && END.equals(fields[3])) {
+					addDatastream(fields[1], fields[2]);
+				}
+			}
+			completedObjects.addAll(objects);
+			completedDatastreams.keySet().removeAll(objects);
+		} finally {
+			IOUtils.closeQuietly(reader);
+		}
+		return endsMidLine(file);
+	}
+
+	private static boolean endsMidLine(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.length() == 0) {
+				return false;
+			}
+			raf.seek(raf.length() - 1);
+			return raf.read() != '\n';
+		} finally {
+			raf.close();
+		}
+	}
+
+	public boolean isObjectComplete(String pid) {
+		return completedObjects.contains(pid);
+	}
+
+	public boolean isDatastreamComplete(String pid, String dsId) {
+		Set<String> dsIds = completedDatastreams.get(pid);
+		return dsIds != null && dsIds.contains(dsId);
+	}
+
+	public int getCompletedObjectCount() {
+		return completedObjects.size();
+	}
+
+	void datastreamComplete(String pid, String dsId) throws IOException {
+		addDatastream(pid, dsId);
+		append(DATASTREAM + '\t' + pid + '\t' + dsId + '\t' + END + '\n', false);
+	}
+
+	void objectComplete(String pid) throws IOException {
+		completedObjects.add(pid);
+		completedDatastreams.remove(pid);
+		append(OBJECT + '\t' + pid + '\t' + END + '\n', true);
+	}
+
+	private void addDatastream(String pid, String dsId) {
+		Set<String> dsIds = completedDatastreams.get(pid);
+		if (dsIds == null) {
+			Set<String> created = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+			dsIds = completedDatastreams.putIfAbsent(pid, created);
+			if (dsIds == null) {
+				dsIds = created;
+			}
+		}
+		dsIds.add(dsId);
+	}
+
+	private synchronized void append(String record, boolean flush) throws IOException {
+		writer.write(record);
+		if (flush) {
+			writer.flush();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+}
@@ -0,0 +1,285 @@
+package org.fcrepo.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.fcrepo.jaxb.responses.access.ObjectDatastreams;
+import org.fcrepo.jaxb.responses.access.ObjectDatastreams.DatastreamElement;
+import org.fcrepo.jaxb.responses.management.DatastreamFixity;
+import org.fcrepo.utils.FixityResult;
+import org.fcrepo.utils.FixityResult.FixityState;
+
+/**
+ * Checks the fixity of every datastream in the repository. Objects are streamed from
+ * {@link FedoraClient#iteratePids()} and fanned out, together with their datastreams, over a
+ * fixed number of worker threads, optionally capped at a number of requests per second.
+ * Datastreams with a copy the repository reports as bad and could not repair are counted as
+ * failures and reported as a {@link FixityException}, so a resumed sweep checks them again.
+ * Progress is recorded in a {@link FixityJournal} so an interrupted sweep can be resumed
+ * by running it again with the same journal.
+ * <p>
+ * Example:
+ * <pre>
+ * FixityJournal journal = new FixityJournal(new File("fixity.journal"));
+ * FixitySweep sweep = new FixitySweep(client, journal);
+ * sweep.setConcurrency(32);
+ * sweep.setRequestsPerSecond(200);
+ * sweep.setListener(listener);
+ * FixitySweepReport report = sweep.run();
+ * journal.close();
+ * </pre>
+ */
+public class FixitySweep {
+
+	public static final int DEFAULT_CONCURRENCY = 16;
+
+	private static final FixitySweepListener NO_LISTENER = new FixitySweepListener() {
+		@Override
+		public void fixityChecked(String pid, String dsId, DatastreamFixity fixity) {
+		}
+
+		@Override
+		public void fixityFailed(String pid, String dsId, Exception cause) {
+		}
+	};
+
+	private final FedoraClient client;
+	private final FixityJournal journal;
+	private int concurrency = DEFAULT_CONCURRENCY;
+	private double requestsPerSecond;
+	private FixitySweepListener listener = NO_LISTENER;
+
+	private final AtomicLong objects = new AtomicLong();
+	private final AtomicLong skippedObjects = new AtomicLong();
+	private final AtomicLong datastreams = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private volatile long startMillis;
+	private volatile long endMillis;
+
+	private ExecutorService workers;
+	private Semaphore objectsInFlight;
+	private RateLimiter rateLimiter;
+
+	public FixitySweep(FedoraClient client, FixityJournal journal) {
+		this.client = client;
+		this.journal = journal;
+	}
+
+	/**
+	 * @param concurrency the maximum number of requests in flight at once
+	 */
+	public void setConcurrency(int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("Concurrency must be at least 1");
+		}
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * @param requestsPerSecond the maximum rate of requests to the repository, or 0 for no limit
+	 */
+	public void setRequestsPerSecond(double requestsPerSecond) {
+		this.requestsPerSecond = requestsPerSecond;
+	}
+
+	public void setListener(FixitySweepListener listener) {
+		this.listener = (listener != null) ? listener : NO_LISTENER;
+	}
+
+	/**
+	 * Run the sweep to completion.
+	 * @return the final report
+	 * @throws IOException if the object list could not be read
+	 * @throws InterruptedException if the calling thread is interrupted, which abandons the sweep
+	 */
+	public FixitySweepReport run() throws IOException, InterruptedException {
+		startMillis = System.currentTimeMillis();
+		endMillis = 0;
+		/* bound the objects in flight so that memory use does not depend on the size of the repository */
+		final int maxObjectsInFlight = concurrency * 4;
+		objectsInFlight = new Semaphore(maxObjectsInFlight);
+		rateLimiter = (requestsPerSecond > 0) ? new RateLimiter(requestsPerSecond) : null;
+		workers = Executors.newFixedThreadPool(concurrency, new DaemonThreadFactory("fcrepo-fixity-sweep"));
+		final PidIterator pids = client.iteratePids();
+		try {
+			while (pids.hasNext()) {
+				final String pid = pids.next();
+				if (journal.isObjectComplete(pid)) {
+					skippedObjects.incrementAndGet();
+					continue;
+				}
+				objectsInFlight.acquire();
+				try {
+					workers.execute(new ObjectCheck(pid));
+				} catch (RuntimeException e) {
+					objectsInFlight.release();
+					throw e;
+				}
+			}
+			objectsInFlight.acquire(maxObjectsInFlight);
+		} catch (IllegalStateException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		} finally {
+			pids.close();
+			workers.shutdownNow();
+			endMillis = System.currentTimeMillis();
+		}
+		return getReport();
+	}
+
+	/**
+	 * @return the progress so far, which may be called from another thread while the sweep runs
+	 */
+	public FixitySweepReport getReport() {
+		long end = (endMillis > 0) ? endMillis : System.currentTimeMillis();
+		return new FixitySweepReport(objects.get(), skippedObjects.get(), datastreams.get(), failures.get(), end - startMillis);
+	}
+
+	private void pace() throws InterruptedException {
+		if (rateLimiter != null) {
+			rateLimiter.acquire();
+		}
+	}
+
+	private void failed(String pid, String dsId, Exception cause) {
+		failures.incrementAndGet();
+		if (cause instanceof InterruptedException) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			listener.fixityFailed(pid, dsId, cause);
+		} catch (RuntimeException e) {
+			// a broken listener must not stall the sweep
+		}
+	}
+
+	/* a copy which fails its checks is fine once the repository has repaired it */
+	static List<FixityResult> badResults(DatastreamFixity fixity) {
+		final List<FixityResult> bad = new ArrayList<FixityResult>();
+		if (fixity.statuses != null) {
+			for (FixityResult result : fixity.statuses) {
+				if (result.status == null || !(result.status.contains(FixityState.SUCCESS) || result.status.contains(FixityState.REPAIRED))) {
+					bad.add(result);
+				}
+			}
+		}
+		return bad;
+	}
+
+	private class ObjectCheck implements Runnable {
+
+		private final String pid;
+		private final AtomicInteger remaining = new AtomicInteger();
+		private volatile boolean incomplete;
+
+		ObjectCheck(String pid) {
+			this.pid = pid;
+		}
+
+		@Override
+		public void run() {
+			final List<String> pending = new ArrayList<String>();
+			try {
+				pace();
+				final ObjectDatastreams list = client.getObjectDatastreams(pid);
+				if (list.datastreams != null) {
+					for (DatastreamElement ds : list.datastreams) {
+						if (!journal.isDatastreamComplete(pid, ds.dsid)) {
+							pending.add(ds.dsid);
+						}
+					}
+				}
+			} catch (Exception e) {
+				failed(pid, null, e);
+				incomplete = true;
+			}
+			if (pending.isEmpty()) {
+				complete();
+				return;
+			}
+			remaining.set(pending.size());
+			int submitted = 0;
+			try {
+				for (String dsId : pending) {
+					workers.execute(new DatastreamCheck(this, dsId));
+					submitted++;
+				}
+			} finally {
+				/* datastreams which never ran must still count down, or the object is never released */
+				for (; submitted < pending.size(); submitted++) {
+					datastreamDone(false);
+				}
+			}
+		}
+
+		void datastreamDone(boolean success) {
+			if (!success) {
+				incomplete = true;
+			}
+			if (remaining.decrementAndGet() == 0) {
+				complete();
+			}
+		}
+
+		private void complete() {
+			try {
+				if (!incomplete) {
+					journal.objectComplete(pid);
+				}
+			} catch (IOException e) {
+				failed(pid, null, e);
+			} finally {
+				objects.incrementAndGet();
+				objectsInFlight.release();
+			}
+		}
+	}
+
+	private class DatastreamCheck implements Runnable {
+
+		private final ObjectCheck object;
+		private final String dsId;
+
+		DatastreamCheck(ObjectCheck object, String dsId) {
+			this.object = object;
+			this.dsId = dsId;
+		}
+
+		@Override
+		public void run() {
+			boolean success = false;
+			try {
+				pace();
+				final DatastreamFixity fixity = client.getDatastreamFixity(object.pid, dsId);
+				final List<FixityResult> bad = badResults(fixity);
+				if (!bad.isEmpty()) {
+					final StringBuilder states = new StringBuilder();
+					for (FixityResult result : bad) {
+						states.append(' ').append(result.storeIdentifier).append('=').append(result.status);
+					}
+					throw new FixityException(fixity, "Bad fixity for " + object.pid + "/" + dsId + ":" + states);
+				}
+				journal.datastreamComplete(object.pid, dsId);
+				datastreams.incrementAndGet();
+				success = true;
+				listener.fixityChecked(object.pid, dsId, fixity);
+			} catch (Exception e) {
+				if (!success) {
+					failed(object.pid, dsId, e);
+				}
+				// otherwise the listener threw, which does not undo the check
+			} finally {
+				object.datastreamDone(success);
+			}
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package org.fcrepo.client;
+
+import org.fcrepo.jaxb.responses.management.DatastreamFixity;
+
+/**
+ * Receives the outcome of every check made by a {@link FixitySweep}. Implementations are
+ * called concurrently from the sweep's worker threads.
+ */
+public interface FixitySweepListener {
+
+	void fixityChecked(String pid, String dsId, DatastreamFixity fixity);
+
+	/**
+	 * @param dsId the datastream which could not be checked, or null if the object's datastreams could not be listed
+	 */
+	void fixityFailed(String pid, String dsId, Exception cause);
+}
@@ -0,0 +1,55 @@
+package org.fcrepo.client;
+
+/**
+ * A snapshot of the progress of a {@link FixitySweep}.
+ */
+public class FixitySweepReport {
+
+	private final long objects;
+	private final long skippedObjects;
+	private final long datastreams;
+	private final long failures;
+	private final long elapsedMillis;
+
+	FixitySweepReport(long objects, long skippedObjects, long datastreams, long failures, long elapsedMillis) {
+		this.objects = objects;
+		this.skippedObjects = skippedObjects;
+		this.datastreams = datastreams;
+		this.failures = failures;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/** @return the number of objects visited by this run */
+	public long getObjects() {
+		return objects;
+	}
+
+	/** @return the number of objects skipped because the journal records them as complete */
+	public long getSkippedObjects() {
+		return skippedObjects;
+	}
+
+	/** @return the number of datastream fixity checks completed by this run */
+	public long getDatastreams() {
+		return datastreams;
+	}
+
+	public long getFailures() {
+		return failures;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/** @return the datastream fixity checks completed per second */
+	public double getThroughput() {
+		return (elapsedMillis > 0) ? datastreams * 1000d / elapsedMillis : 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d objects (%d skipped), %d datastreams, %d failures in %d ms (%.1f datastreams/s)",
+				objects, skippedObjects, datastreams, failures, elapsedMillis, getThroughput());
+	}
+}
@@ -0,0 +1,54 @@
+package org.fcrepo.client;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends a second, duplicate read when the first has not answered within a high percentile
+ * of the latencies observed for that operation, and uses whichever response arrives first.
+ * This trades a few percent of extra requests for a much shorter latency tail.
+ */
+public class HedgingPolicy {
+
+	public static final double DEFAULT_PERCENTILE = 95;
+	public static final int DEFAULT_MIN_SAMPLES = 100;
+
+	private final double percentile;
+	private final long minDelayNanos;
+	private final int minSamples;
+	private final Map<Operation, LatencyHistogram> latencies = new EnumMap<Operation, LatencyHistogram>(Operation.class);
+
+	public HedgingPolicy(long minDelayMillis) {
+		this(DEFAULT_PERCENTILE, minDelayMillis, DEFAULT_MIN_SAMPLES);
+	}
+
+	/**
+	 * @param percentile the latency percentile after which a hedged request is sent
+	 * @param minDelayMillis never hedge sooner than this
+	 * @param minSamples the number of responses to observe for an operation before hedging it
+	 */
+	public HedgingPolicy(double percentile, long minDelayMillis, int minSamples) {
+		this.percentile = percentile;
+		this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+		this.minSamples = minSamples;
+		for (Operation operation : Operation.values()) {
+			latencies.put(operation, new LatencyHistogram());
+		}
+	}
+
+	void record(Operation operation, long latencyNanos) {
+		latencies.get(operation).record(latencyNanos);
+	}
+
+	/**
+	 * @return how long to wait before hedging, or -1 if too little is known about the operation yet
+	 */
+	long getDelayNanos(Operation operation) {
+		final LatencyHistogram histogram = latencies.get(operation);
+		if (histogram.getCount() < minSamples) {
+			return -1;
+		}
+		return Math.max(histogram.getPercentileNanos(percentile), minDelayNanos);
+	}
+}
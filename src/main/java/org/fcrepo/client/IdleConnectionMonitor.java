@@ -0,0 +1,47 @@
+package org.fcrepo.client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.ClientConnectionManager;
+
+/**
+ * Daemon thread that periodically evicts expired and idle connections from a
+ * pooled connection manager, so that connections closed by the server while
+ * sitting in the pool are not handed out to callers.
+ */
+class IdleConnectionMonitor extends Thread {
+
+	private final ClientConnectionManager connectionManager;
+	private final long idleTimeoutMillis;
+	private volatile boolean shutdown;
+
+	IdleConnectionMonitor(ClientConnectionManager connectionManager, long idleTimeoutMillis) {
+		super("fcrepo-client-idle-connection-monitor");
+		this.connectionManager = connectionManager;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		setDaemon(true);
+	}
+
+	@Override
+	public void run() {
+		final long interval = Math.max(idleTimeoutMillis / 2, 1000);
+		try {
+			while (!shutdown) {
+				synchronized (this) {
+					wait(interval);
+				}
+				connectionManager.closeExpiredConnections();
+				connectionManager.closeIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException e) {
+			// terminate
+		}
+	}
+
+	void shutdown() {
+		shutdown = true;
+		synchronized (this) {
+			notifyAll();
+		}
+	}
+}
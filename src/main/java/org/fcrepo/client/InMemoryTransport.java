@@ -0,0 +1,112 @@
+package org.fcrepo.client;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+import org.apache.http.message.BasicHttpResponse;
+
+/**
+ * Answers requests from handlers registered in memory, without touching the network, for
+ * tests and benchmarks of everything above the transport. Handlers are looked up by the path
+ * and query of the request URI; requests nobody handles get a 404.
+ * <p>
+ * Example:
+ * <pre>
+ * InMemoryTransport transport = new InMemoryTransport();
+ * transport.setResponse("/fcrepo/rest/objects/test:1", 200, "text/xml", profileXml);
+ * FedoraClient client = new FedoraClient(transport);
+ * client.setFedoraUri("http://localhost/fcrepo");
+ * </pre>
+ */
+public class InMemoryTransport implements Transport {
+
+	public interface Handler {
+
+		/**
+		 * @return a new response for every request, since entities are consumed by the client
+		 */
+		HttpResponse handle(HttpUriRequest request) throws IOException;
+	}
+
+	private final Map<String, Handler> handlers = new ConcurrentHashMap<String, Handler>();
+	private final AtomicLong requests = new AtomicLong();
+	private volatile Handler defaultHandler;
+
+	public void setHandler(String path, Handler handler) {
+		handlers.put(path, handler);
+	}
+
+	/**
+	 * Answer every request for the path with the same status and body.
+	 */
+	public void setResponse(String path, final int status, final String contentType, final byte[] body) {
+		setHandler(path, new Handler() {
+			@Override
+			public HttpResponse handle(HttpUriRequest request) {
+				return response(status, contentType, body);
+			}
+		});
+	}
+
+	/**
+	 * @param handler answers requests for paths without a handler of their own, or null for a 404
+	 */
+	public void setDefaultHandler(Handler handler) {
+		this.defaultHandler = handler;
+	}
+
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	@Override
+	public HttpResponse execute(HttpUriRequest request) throws IOException {
+		if (request.isAborted()) {
+			throw new IOException("Request already aborted");
+		}
+		requests.incrementAndGet();
+		final String query = request.getURI().getRawQuery();
+		final String path = request.getURI().getRawPath() + ((query != null) ? "?" + query : "");
+		Handler handler = handlers.get(path);
+		if (handler == null) {
+			handler = defaultHandler;
+		}
+		if (handler == null) {
+			return response(HttpStatus.SC_NOT_FOUND, null, null);
+		}
+		return handler.handle(request);
+	}
+
+	@Override
+	public int getMaxConcurrency() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public void shutdown() {
+	}
+
+	/**
+	 * @param contentType the media type of the body, or null
+	 * @param body the body, or null for a response without one
+	 */
+	public static HttpResponse response(int status, String contentType, byte[] body) {
+		final BasicHttpResponse resp = new BasicHttpResponse(HttpVersion.HTTP_1_1, status,
+				EnglishReasonPhraseCatalog.INSTANCE.getReason(status, Locale.ENGLISH));
+		if (body != null) {
+			final ByteArrayEntity entity = new ByteArrayEntity(body);
+			entity.setContentType(contentType);
+			resp.setEntity(entity);
+		}
+		return resp;
+	}
+}
@@ -0,0 +1,222 @@
+package org.fcrepo.client;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.client.HttpResponseException;
+import org.fcrepo.jaxb.responses.access.ObjectProfile;
+import org.fcrepo.jaxb.responses.management.DatastreamProfile;
+
+/**
+ * Brings an {@link ObjectIndex} up to date with the repository and reports what changed.
+ * The object list is streamed from {@link FedoraClient#iteratePids()} and compared with the index:
+ * <ul>
+ * <li>objects missing from the index are fetched with all their datastream profiles</li>
+ * <li>objects in the index cost a single profile request, and their datastream profiles are only
+ * fetched when the last modified date differs</li>
+ * <li>objects in the index but no longer listed are deleted</li>
+ * </ul>
+ * The index is saved at the end of the run. Objects which fail keep their previous entry, so
+ * they are picked up again by the next run.
+ * <p>
+ * Example:
+ * <pre>
+ * ObjectIndex index = new ObjectIndex(new File("objects.index"));
+ * IncrementalSync sync = new IncrementalSync(client, index);
+ * sync.setListener(listener);
+ * SyncReport report = sync.run();
+ * </pre>
+ */
+public class IncrementalSync {
+
+	public static final int DEFAULT_CONCURRENCY = 16;
+
+	private static final SyncListener NO_LISTENER = new SyncListener() {
+		@Override
+		public void objectAdded(ObjectGraph object) {
+		}
+
+		@Override
+		public void objectChanged(ObjectGraph object, Set<String> changedDatastreams) {
+		}
+
+		@Override
+		public void objectDeleted(String pid) {
+		}
+
+		@Override
+		public void syncFailed(String pid, Exception cause) {
+		}
+	};
+
+	private final FedoraClient client;
+	private final ObjectIndex index;
+	private int concurrency = DEFAULT_CONCURRENCY;
+	private SyncListener listener = NO_LISTENER;
+
+	private final AtomicLong added = new AtomicLong();
+	private final AtomicLong changed = new AtomicLong();
+	private final AtomicLong unchanged = new AtomicLong();
+	private final AtomicLong deleted = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+
+	public IncrementalSync(FedoraClient client, ObjectIndex index) {
+		this.client = client;
+		this.index = index;
+	}
+
+	/**
+	 * @param concurrency the maximum number of objects compared at once
+	 */
+	public void setConcurrency(int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("Concurrency must be at least 1");
+		}
+		this.concurrency = concurrency;
+	}
+
+	public void setListener(SyncListener listener) {
+		this.listener = (listener != null) ? listener : NO_LISTENER;
+	}
+
+	/**
+	 * Run the sync to completion and save the index.
+	 * @throws IOException if the object list could not be read, in which case nothing is deleted
+	 * @throws InterruptedException if the calling thread is interrupted, which abandons the run without saving
+	 */
+	public SyncReport run() throws IOException, InterruptedException {
+		final long start = System.currentTimeMillis();
+		added.set(0);
+		changed.set(0);
+		unchanged.set(0);
+		deleted.set(0);
+		failures.set(0);
+		final Set<String> listed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(index.size() * 2));
+		final Semaphore inFlight = new Semaphore(concurrency * 4);
+		final ExecutorService workers = Executors.newFixedThreadPool(concurrency, new DaemonThreadFactory("fcrepo-sync"));
+		final PidIterator pids = client.iteratePids();
+		try {
+			while (pids.hasNext()) {
+				final String pid = pids.next();
+				listed.add(pid);
+				inFlight.acquire();
+				workers.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							sync(pid);
+						} finally {
+							inFlight.release();
+						}
+					}
+				});
+			}
+			inFlight.acquire(concurrency * 4);
+		} catch (IllegalStateException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		} finally {
+			pids.close();
+			workers.shutdownNow();
+		}
+		/* only a complete object list tells which objects are gone */
+		for (String pid : new HashSet<String>(index.getPids())) {
+			if (!listed.contains(pid)) {
+				deleted(pid);
+			}
+		}
+		index.save();
+		return new SyncReport(added.get(), changed.get(), unchanged.get(), deleted.get(), failures.get(),
+				System.currentTimeMillis() - start);
+	}
+
+	private void sync(String pid) {
+		try {
+			final ObjectIndex.Entry previous = index.get(pid);
+			final ObjectGraph graph;
+			if (previous != null) {
+				final ObjectProfile profile = client.getObjectProfile(pid);
+				if (profile.objLastModDate != null && profile.objLastModDate.equals(previous.getLastModified())) {
+					unchanged.incrementAndGet();
+					return;
+				}
+				/* the profile just compared is current, so it is not fetched again */
+				graph = client.getObjectGraph(pid, profile);
+			} else {
+				graph = client.getObjectGraph(pid);
+			}
+			final Map<String, String> checksums = checksums(graph);
+			/* the index only moves on once the listener has taken the change, so a failure is retried next time */
+			if (previous == null) {
+				listener.objectAdded(graph);
+				added.incrementAndGet();
+			} else {
+				listener.objectChanged(graph, changedDatastreams(previous.getChecksums(), checksums));
+				changed.incrementAndGet();
+			}
+			index.put(pid, new ObjectIndex.Entry(graph.getProfile().objLastModDate, checksums));
+		} catch (HttpResponseException e) {
+			if (e.getStatusCode() == 404) {
+				/* deleted since the object list was read */
+				deleted(pid);
+			} else {
+				failed(pid, e);
+			}
+		} catch (Exception e) {
+			failed(pid, e);
+		}
+	}
+
+	private void deleted(String pid) {
+		if (index.get(pid) != null) {
+			try {
+				listener.objectDeleted(pid);
+			} catch (RuntimeException e) {
+				failed(pid, e);
+				return;
+			}
+			index.remove(pid);
+			deleted.incrementAndGet();
+		}
+	}
+
+	private void failed(String pid, Exception cause) {
+		failures.incrementAndGet();
+		listener.syncFailed(pid, cause);
+	}
+
+	private static Map<String, String> checksums(ObjectGraph graph) {
+		final Map<String, String> checksums = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, DatastreamProfile> ds : graph.getDatastreamProfiles().entrySet()) {
+			final DatastreamProfile profile = ds.getValue();
+			checksums.put(ds.getKey(), (profile.dsChecksum != null) ? profile.dsChecksum.toString() : "");
+		}
+		return checksums;
+	}
+
+	private static Set<String> changedDatastreams(Map<String, String> before, Map<String, String> after) {
+		final Set<String> dsIds = new HashSet<String>();
+		for (Map.Entry<String, String> ds : after.entrySet()) {
+			if (!ds.getValue().equals(before.get(ds.getKey()))) {
+				dsIds.add(ds.getKey());
+			}
+		}
+		for (String dsId : before.keySet()) {
+			if (!after.containsKey(dsId)) {
+				dsIds.add(dsId);
+			}
+		}
+		return dsIds;
+	}
+}
@@ -0,0 +1,140 @@
+package org.fcrepo.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.AbortableHttpRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+
+/**
+ * Sends requests with the JDK's own {@link HttpURLConnection}, which needs no connection
+ * manager and keeps connections alive in the JVM-wide cache. That cache holds at most
+ * <code>http.maxConnections</code> idle connections per host (5 unless the system property
+ * says otherwise), which should be raised to the expected concurrency for busy clients.
+ */
+public class JdkTransport implements Transport {
+
+	public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+	public static final int DEFAULT_READ_TIMEOUT_MILLIS = 60000;
+
+	private final int maxConcurrency;
+	private final int connectTimeoutMillis;
+	private final int readTimeoutMillis;
+
+	public JdkTransport() {
+		this(FedoraClient.DEFAULT_MAX_CONNECTIONS_TOTAL, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * @param maxConcurrency the number of requests expected in flight at once
+	 * @param connectTimeoutMillis how long to wait for a connection, or 0 to wait forever
+	 * @param readTimeoutMillis how long to wait for data on an open connection, or 0 to wait forever
+	 */
+	public JdkTransport(int maxConcurrency, int connectTimeoutMillis, int readTimeoutMillis) {
+		this.maxConcurrency = maxConcurrency;
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+	}
+
+	@Override
+	public HttpResponse execute(HttpUriRequest request) throws IOException {
+		final HttpURLConnection connection = (HttpURLConnection) request.getURI().toURL().openConnection();
+		if (request instanceof AbortableHttpRequest) {
+			/* throws if the request was aborted before it was sent */
+			((AbortableHttpRequest) request).setReleaseTrigger(new ConnectionReleaseTrigger() {
+				@Override
+				public void releaseConnection() {
+				}
+
+				@Override
+				public void abortConnection() {
+					connection.disconnect();
+				}
+			});
+		}
+		connection.setRequestMethod(request.getMethod());
+		connection.setConnectTimeout(connectTimeoutMillis);
+		connection.setReadTimeout(readTimeoutMillis);
+		connection.setUseCaches(false);
+		for (Header header : request.getAllHeaders()) {
+			connection.addRequestProperty(header.getName(), header.getValue());
+		}
+		if (request instanceof HttpEntityEnclosingRequest) {
+			sendEntity(connection, ((HttpEntityEnclosingRequest) request).getEntity());
+		}
+		final int status = connection.getResponseCode();
+		final BasicHttpResponse resp = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, connection.getResponseMessage());
+		for (Map.Entry<String, List<String>> field : connection.getHeaderFields().entrySet()) {
+			/* the status line is listed under a null name */
+			if (field.getKey() != null) {
+				for (String value : field.getValue()) {
+					resp.addHeader(field.getKey(), value);
+				}
+			}
+		}
+		final InputStream content = (status >= 400) ? connection.getErrorStream() : connection.getInputStream();
+		if (content != null) {
+			final InputStreamEntity entity = new InputStreamEntity(content, contentLength(resp));
+			entity.setContentType(connection.getContentType());
+			entity.setContentEncoding(connection.getContentEncoding());
+			resp.setEntity(entity);
+		}
+		return resp;
+	}
+
+	@Override
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	@Override
+	public void shutdown() {
+		// the connection cache belongs to the JVM
+	}
+
+	private static void sendEntity(final HttpURLConnection connection, final HttpEntity entity) throws IOException {
+		if (entity == null) {
+			return;
+		}
+		connection.setDoOutput(true);
+		if (entity.getContentLength() >= 0 && entity.getContentLength() <= Integer.MAX_VALUE) {
+			connection.setFixedLengthStreamingMode((int) entity.getContentLength());
+		} else {
+			connection.setChunkedStreamingMode(0);
+		}
+		if (entity.getContentType() != null) {
+			connection.setRequestProperty(HttpHeaders.CONTENT_TYPE, entity.getContentType().getValue());
+		}
+		final OutputStream out = connection.getOutputStream();
+		try {
+			entity.writeTo(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static long contentLength(final HttpResponse resp) {
+		final Header header = resp.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+		if (header == null) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(header.getValue().trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
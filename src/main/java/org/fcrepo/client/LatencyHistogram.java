@@ -0,0 +1,83 @@
+package org.fcrepo.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations with power-of-two microsecond buckets. Percentiles are
+ * approximate: they are interpolated within the bucket the percentile falls into, so are
+ * always within a factor of two of the true value.
+ */
+public class LatencyHistogram {
+
+	private static final int BUCKETS = 40;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	public void record(long durationNanos) {
+		final long micros = Math.max(TimeUnit.NANOSECONDS.toMicros(durationNanos), 0);
+		final int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+		buckets.incrementAndGet(bucket);
+		count.incrementAndGet();
+		totalNanos.addAndGet(durationNanos);
+		long max;
+		while (durationNanos > (max = maxNanos.get())) {
+			if (maxNanos.compareAndSet(max, durationNanos)) {
+				break;
+			}
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	public long getMeanNanos() {
+		final long n = count.get();
+		return (n > 0) ? totalNanos.get() / n : 0;
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the approximate duration below which the given percentage of samples fall, or 0 if there are none
+	 */
+	public long getPercentileNanos(double percentile) {
+		long total = 0;
+		final long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		final long rank = Math.max((long) Math.ceil(total * percentile / 100d), 1);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			if (seen + counts[i] >= rank) {
+				/* bucket i holds durations from 2^(i-1) up to 2^i microseconds, interpolate within it */
+				final double lower = (i == 0) ? 0 : (1L << (i - 1));
+				final double upper = 1L << i;
+				final double micros = lower + (upper - lower) * (rank - seen) / counts[i];
+				return Math.min(TimeUnit.MICROSECONDS.toNanos((long) micros), getMaxNanos());
+			}
+			seen += counts[i];
+		}
+		return getMaxNanos();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d mean=%.2fms p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms", getCount(),
+				getMeanNanos() / 1e6, getPercentileNanos(50) / 1e6, getPercentileNanos(95) / 1e6,
+				getPercentileNanos(99) / 1e6, getMaxNanos() / 1e6);
+	}
+}
@@ -0,0 +1,156 @@
+package org.fcrepo.client;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link RequestListener} keeping per-operation latency and unmarshalling histograms,
+ * byte and status code counts, and the peak connection pool usage.
+ * <pre>
+ * MetricsRecorder metrics = new MetricsRecorder();
+ * client.setRequestListener(metrics);
+ * ...
+ * System.out.println(metrics);
+ * </pre>
+ */
+public class MetricsRecorder implements RequestListener {
+
+	public static class OperationMetrics {
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final LatencyHistogram unmarshalling = new LatencyHistogram();
+		private final AtomicLong bytesRead = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final ConcurrentMap<Integer, AtomicLong> statusCodes = new ConcurrentHashMap<Integer, AtomicLong>();
+
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		public LatencyHistogram getUnmarshalling() {
+			return unmarshalling;
+		}
+
+		public long getBytesRead() {
+			return bytesRead.get();
+		}
+
+		/** @return the number of requests which failed without a response */
+		public long getFailures() {
+			return failures.get();
+		}
+
+		/** @return the number of responses by status code */
+		public Map<Integer, Long> getStatusCodes() {
+			final Map<Integer, Long> counts = new TreeMap<Integer, Long>();
+			for (Map.Entry<Integer, AtomicLong> status : statusCodes.entrySet()) {
+				counts.put(status.getKey(), status.getValue().get());
+			}
+			return counts;
+		}
+
+		private void countStatus(int statusCode) {
+			AtomicLong counter = statusCodes.get(statusCode);
+			if (counter == null) {
+				final AtomicLong created = new AtomicLong();
+				counter = statusCodes.putIfAbsent(statusCode, created);
+				if (counter == null) {
+					counter = created;
+				}
+			}
+			counter.incrementAndGet();
+		}
+
+		@Override
+		public String toString() {
+			return "latency[" + latency + "] unmarshal[" + unmarshalling + "] bytes=" + getBytesRead()
+					+ " failures=" + getFailures() + " status=" + getStatusCodes();
+		}
+	}
+
+	private final Map<Operation, OperationMetrics> operations = new EnumMap<Operation, OperationMetrics>(Operation.class);
+	private final AtomicInteger peakLeased = new AtomicInteger();
+	private final AtomicInteger peakPending = new AtomicInteger();
+	private volatile int maxConnections;
+
+	public MetricsRecorder() {
+		for (Operation operation : Operation.values()) {
+			operations.put(operation, new OperationMetrics());
+		}
+	}
+
+	public OperationMetrics get(Operation operation) {
+		return operations.get(operation);
+	}
+
+	/** @return the most connections leased at once */
+	public int getPeakLeasedConnections() {
+		return peakLeased.get();
+	}
+
+	/** @return the most requests seen waiting for a connection at once; anything above 0 means the pool is saturated */
+	public int getPeakPendingRequests() {
+		return peakPending.get();
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	@Override
+	public void requestCompleted(Operation operation, int statusCode, long durationNanos) {
+		final OperationMetrics metrics = operations.get(operation);
+		metrics.latency.record(durationNanos);
+		metrics.countStatus(statusCode);
+	}
+
+	@Override
+	public void requestFailed(Operation operation, Exception cause, long durationNanos) {
+		final OperationMetrics metrics = operations.get(operation);
+		metrics.latency.record(durationNanos);
+		metrics.failures.incrementAndGet();
+	}
+
+	@Override
+	public void responseUnmarshalled(Operation operation, long durationNanos) {
+		operations.get(operation).unmarshalling.record(durationNanos);
+	}
+
+	@Override
+	public void responseRead(Operation operation, long bytes) {
+		operations.get(operation).bytesRead.addAndGet(bytes);
+	}
+
+	@Override
+	public void connectionPoolStatus(int leased, int pending, int available, int max) {
+		maxConnections = max;
+		raise(peakLeased, leased);
+		raise(peakPending, pending);
+	}
+
+	private static void raise(AtomicInteger peak, int value) {
+		int current;
+		while (value > (current = peak.get())) {
+			if (peak.compareAndSet(current, value)) {
+				return;
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder report = new StringBuilder();
+		for (Map.Entry<Operation, OperationMetrics> operation : operations.entrySet()) {
+			if (operation.getValue().getLatency().getCount() > 0) {
+				report.append(operation.getKey()).append(": ").append(operation.getValue()).append('\n');
+			}
+		}
+		report.append("connections: peak leased=").append(getPeakLeasedConnections()).append(" of ").append(getMaxConnections())
+				.append(", peak pending=").append(getPeakPendingRequests());
+		return report.toString();
+	}
+}
@@ -0,0 +1,37 @@
+package org.fcrepo.client;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.fcrepo.jaxb.responses.access.ObjectProfile;
+import org.fcrepo.jaxb.responses.management.DatastreamProfile;
+
+/**
+ * An object profile together with the profiles of all of its datastreams, as returned by
+ * {@link FedoraClient#getObjectGraph(String)}.
+ */
+public class ObjectGraph {
+
+	private final ObjectProfile profile;
+	private final Map<String, DatastreamProfile> datastreamProfiles;
+
+	ObjectGraph(ObjectProfile profile, Map<String, DatastreamProfile> datastreamProfiles) {
+		this.profile = profile;
+		this.datastreamProfiles = Collections.unmodifiableMap(datastreamProfiles);
+	}
+
+	public ObjectProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * @return the datastream profiles keyed by dsid, sorted by dsid
+	 */
+	public Map<String, DatastreamProfile> getDatastreamProfiles() {
+		return datastreamProfiles;
+	}
+
+	public DatastreamProfile getDatastreamProfile(String dsId) {
+		return datastreamProfiles.get(dsId);
+	}
+}
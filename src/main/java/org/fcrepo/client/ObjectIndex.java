@@ -0,0 +1,128 @@
+package org.fcrepo.client;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * The state of the repository as last seen by an {@link IncrementalSync}: for every object its
+ * last modified date and the checksum of each of its datastreams. The index is kept in memory
+ * and saved as one <code>pid&lt;tab&gt;lastModified(&lt;tab&gt;dsId&lt;tab&gt;checksum)*</code> line
+ * per object. Saving writes a new file and renames it over the old one, so a crash never
+ * leaves a partly written index behind.
+ */
+public class ObjectIndex {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	public static class Entry {
+
+		private final String lastModified;
+		private final Map<String, String> checksums;
+
+		Entry(String lastModified, Map<String, String> checksums) {
+			this.lastModified = (lastModified != null) ? lastModified : "";
+			this.checksums = Collections.unmodifiableMap(checksums);
+		}
+
+		public String getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * @return the checksum of each datastream keyed by dsid, with an empty string for datastreams without one
+		 */
+		public Map<String, String> getChecksums() {
+			return checksums;
+		}
+	}
+
+	public ObjectIndex(File file) throws IOException {
+		this.file = file;
+		if (file.exists()) {
+			load();
+		}
+	}
+
+	private void load() throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t", -1);
+				if (fields.length < 2 || fields.length % 2 != 0) {
+					throw new IOException("Corrupt object index " + file + ": " + line);
+				}
+				Map<String, String> checksums = new LinkedHashMap<String, String>(fields.length);
+				for (int i = 2; i < fields.length; i += 2) {
+					checksums.put(fields[i], fields[i + 1]);
+				}
+				entries.put(fields[0], new Entry(fields[1], checksums));
+			}
+		} finally {
+			IOUtils.closeQuietly(reader);
+		}
+	}
+
+	public Entry get(String pid) {
+		return entries.get(pid);
+	}
+
+	public Set<String> getPids() {
+		return Collections.unmodifiableSet(entries.keySet());
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	void put(String pid, Entry entry) {
+		entries.put(pid, entry);
+	}
+
+	void remove(String pid) {
+		entries.remove(pid);
+	}
+
+	/**
+	 * Write the index to its file. Entries changed while saving may or may not be included.
+	 */
+	public synchronized void save() throws IOException {
+		final File saving = new File(file.getPath() + ".tmp");
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(saving), UTF8));
+		try {
+			final StringBuilder line = new StringBuilder();
+			for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+				line.setLength(0);
+				line.append(entry.getKey()).append('\t').append(entry.getValue().lastModified);
+				for (Map.Entry<String, String> checksum : entry.getValue().checksums.entrySet()) {
+					line.append('\t').append(checksum.getKey()).append('\t').append(checksum.getValue());
+				}
+				writer.write(line.append('\n').toString());
+			}
+		} finally {
+			writer.close();
+		}
+		/* renaming over an existing file fails on some platforms */
+		if (!saving.renameTo(file) && !(file.delete() && saving.renameTo(file))) {
+			throw new IOException("Unable to replace object index " + file);
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package org.fcrepo.client;
+
+/**
+ * The repository operations performed by {@link FedoraClient}, as reported to a {@link RequestListener}.
+ */
+public enum Operation {
+
+	OBJECT_PROFILE("object profile", true),
+	OBJECT_DATASTREAMS("object datastreams", true),
+	DATASTREAM_PROFILE("datastream profile", true),
+	DATASTREAM_CONTENT("datastream content", false),
+	DATASTREAM_FIXITY("datastream fixity", false),
+	PIDS("object list", false);
+
+	private final String description;
+	private final boolean cacheable;
+
+	private Operation(String description, boolean cacheable) {
+		this.description = description;
+		this.cacheable = cacheable;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	/* whether responses may be cached and shared between concurrent callers */
+	boolean isCacheable() {
+		return cacheable;
+	}
+}
@@ -0,0 +1,209 @@
+package org.fcrepo.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.AbortableHttpRequest;
+
+/**
+ * Tokenizes the JSON array of pids returned by fedora straight off the response stream,
+ * so that memory use does not grow with the number of objects in the repository.
+ * Both quoted (<code>["a","b"]</code>) and bare (<code>[a,b]</code>) array elements are accepted.
+ * <p>
+ * The iterator closes itself once the array is exhausted. Callers which stop early must
+ * call {@link #close()} to release the underlying connection.
+ */
+public class PidIterator implements Iterator<String>, Closeable {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final Reader reader;
+	private final AbortableHttpRequest request;
+	private final char[] buffer = new char[8192];
+	private final StringBuilder token = new StringBuilder();
+	private int position;
+	private int limit;
+	private int pushback = -1;
+	private boolean started;
+	private boolean exhausted;
+	private boolean closed;
+	private String next;
+
+	public PidIterator(InputStream in) {
+		this(in, null);
+	}
+
+	/**
+	 * @param in the response body
+	 * @param request the request to abort if the iterator is closed before the end of the body
+	 */
+	PidIterator(InputStream in, AbortableHttpRequest request) {
+		this.reader = new InputStreamReader(in, UTF8);
+		this.request = request;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null && !exhausted) {
+			try {
+				next = readPid();
+			} catch (IOException e) {
+				close();
+				throw new IllegalStateException("Unable to read object list from fedora", e);
+			}
+			if (next == null) {
+				exhausted = true;
+				close();
+			}
+		}
+		return next != null;
+	}
+
+	@Override
+	public String next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		String pid = next;
+		next = null;
+		return pid;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("The object list is read only");
+	}
+
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (!exhausted && request != null) {
+			/* don't drain the rest of a potentially huge list just to reuse the connection */
+			request.abort();
+		}
+		IOUtils.closeQuietly(reader);
+	}
+
+	private String readPid() throws IOException {
+		if (!started) {
+			int c = readNonWhitespace();
+			if (c == -1) {
+				return null;
+			}
+			if (c != '[') {
+				throw new IOException("Expected a JSON array but found '" + (char) c + "'");
+			}
+			started = true;
+		}
+		int c = readNonWhitespace();
+		if (c == ',') {
+			c = readNonWhitespace();
+		}
+		if (c == -1 || c == ']') {
+			return null;
+		}
+		token.setLength(0);
+		if (c == '"') {
+			readQuoted();
+		} else {
+			readBare(c);
+		}
+		return token.toString();
+	}
+
+	private void readQuoted() throws IOException {
+		int c;
+		while ((c = read()) != '"') {
+			if (c == -1) {
+				throw new IOException("Unterminated string in object list");
+			}
+			if (c == '\\') {
+				c = read();
+				switch (c) {
+				case 'n':
+					token.append('\n');
+					break;
+				case 't':
+					token.append('\t');
+					break;
+				case 'r':
+					token.append('\r');
+					break;
+				case 'b':
+					token.append('\b');
+					break;
+				case 'f':
+					token.append('\f');
+					break;
+				case 'u':
+					char[] hex = new char[4];
+					for (int i = 0; i < 4; i++) {
+						int h = read();
+						if (h == -1) {
+							throw new IOException("Unterminated escape in object list");
+						}
+						hex[i] = (char) h;
+					}
+					token.append((char) Integer.parseInt(new String(hex), 16));
+					break;
+				case -1:
+					throw new IOException("Unterminated escape in object list");
+				default:
+					token.append((char) c);
+				}
+			} else {
+				token.append((char) c);
+			}
+		}
+	}
+
+	private void readBare(int c) throws IOException {
+		while (c != -1 && c != ',' && c != ']') {
+			token.append((char) c);
+			c = read();
+		}
+		if (c == ']') {
+			pushback = c;
+		}
+		int end = token.length();
+		while (end > 0 && Character.isWhitespace(token.charAt(end - 1))) {
+			end--;
+		}
+		token.setLength(end);
+	}
+
+	private int readNonWhitespace() throws IOException {
+		int c;
+		do {
+			c = read();
+		} while (c != -1 && Character.isWhitespace(c));
+		return c;
+	}
+
+	private int read() throws IOException {
+		if (pushback != -1) {
+			int c = pushback;
+			pushback = -1;
+			return c;
+		}
+		if (position == limit) {
+			limit = reader.read(buffer, 0, buffer.length);
+			position = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return -1;
+			}
+		}
+		return buffer[position++];
+	}
+}
@@ -0,0 +1,33 @@
+package org.fcrepo.client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces out permits evenly so that callers sharing the limiter do not exceed
+ * a fixed number of requests per second.
+ */
+class RateLimiter {
+
+	private final long intervalNanos;
+	private long nextPermit = System.nanoTime();
+
+	RateLimiter(double permitsPerSecond) {
+		if (permitsPerSecond <= 0) {
+			throw new IllegalArgumentException("The rate must be positive");
+		}
+		this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+	}
+
+	void acquire() throws InterruptedException {
+		final long wait;
+		synchronized (this) {
+			long now = System.nanoTime();
+			long permit = Math.max(nextPermit, now);
+			nextPermit = permit + intervalNanos;
+			wait = permit - now;
+		}
+		if (wait > 0) {
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+}
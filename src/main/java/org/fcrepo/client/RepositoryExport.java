@@ -0,0 +1,311 @@
+package org.fcrepo.client;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.bind.Marshaller;
+
+import org.apache.commons.io.IOUtils;
+import org.fcrepo.jaxb.responses.management.DatastreamProfile;
+
+/**
+ * Copies objects with their profiles and content to a directory on local storage. Objects are
+ * exported in parallel, and the number waiting for a worker is bounded, so the object list is
+ * read only as fast as the repository can be copied. Content is streamed straight to disk,
+ * so memory use depends on the concurrency and not on the size of objects or of the repository.
+ * <p>
+ * The archive has one directory per object under <code>objects/</code>, named after the URL-encoded pid.
+ * It holds <code>object.xml</code>, and under <code>datastreams/</code> a <code>&lt;dsId&gt;.xml</code> and a
+ * <code>&lt;dsId&gt;.content</code> for every datastream, named after the URL-encoded dsId.
+ * <code>index.tsv</code> lists a <code>D&lt;tab&gt;pid&lt;tab&gt;dsId&lt;tab&gt;size&lt;tab&gt;sha1&lt;tab&gt;$</code> line for
+ * every datastream, followed by an <code>O&lt;tab&gt;pid&lt;tab&gt;lastModified&lt;tab&gt;$</code> line once the
+ * whole object has been written. The closing <code>$</code> marks a complete record, so a line cut short
+ * by an interrupted export is ignored. Content is verified against the repository's checksum as it is
+ * copied. Running an export again into the same directory skips the objects the index records as complete.
+ * <p>
+ * Example:
+ * <pre>
+ * RepositoryExport export = new RepositoryExport(client, new File("/backup/fedora"));
+ * export.setConcurrency(16);
+ * ExportReport report = export.run();
+ * </pre>
+ */
+public class RepositoryExport {
+
+	public static final int DEFAULT_CONCURRENCY = 8;
+	public static final String INDEX_FILE = "index.tsv";
+	public static final String OBJECTS_DIRECTORY = "objects";
+	public static final String DATASTREAMS_DIRECTORY = "datastreams";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String OBJECT = "O";
+	private static final String DATASTREAM = "D";
+	private static final String END = "$";
+	private static final String INDEX_ALGORITHM = "SHA-1";
+
+	private static final ExportListener NO_LISTENER = new ExportListener() {
+		@Override
+		public void objectExported(String pid, int datastreams, long bytes) {
+		}
+
+		@Override
+		public void exportFailed(String pid, String dsId, Exception cause) {
+		}
+	};
+
+	private final FedoraClient client;
+	private final File directory;
+	private int concurrency = DEFAULT_CONCURRENCY;
+	private ExportListener listener = NO_LISTENER;
+
+	private final AtomicLong objects = new AtomicLong();
+	private final AtomicLong skippedObjects = new AtomicLong();
+	private final AtomicLong datastreams = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private volatile long startMillis;
+	private volatile long endMillis;
+
+	private Writer index;
+
+	public RepositoryExport(FedoraClient client, File directory) {
+		this.client = client;
+		this.directory = directory;
+	}
+
+	/**
+	 * @param concurrency the number of objects exported at once
+	 */
+	public void setConcurrency(int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("Concurrency must be at least 1");
+		}
+		this.concurrency = concurrency;
+	}
+
+	public void setListener(ExportListener listener) {
+		this.listener = (listener != null) ? listener : NO_LISTENER;
+	}
+
+	/**
+	 * Export every object in the repository.
+	 */
+	public ExportReport run() throws IOException, InterruptedException {
+		final PidIterator pids = client.iteratePids();
+		try {
+			return run(pids);
+		} catch (IllegalStateException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		} finally {
+			pids.close();
+		}
+	}
+
+	/**
+	 * Export a subset of the repository.
+	 * @param pids the objects to export, read no faster than they can be exported
+	 * @return the report of this run alone
+	 * @throws InterruptedException if the calling thread is interrupted, which abandons the export
+	 */
+	public ExportReport run(Iterator<String> pids) throws IOException, InterruptedException {
+		objects.set(0);
+		skippedObjects.set(0);
+		datastreams.set(0);
+		bytes.set(0);
+		failures.set(0);
+		startMillis = System.currentTimeMillis();
+		endMillis = 0;
+		if (!new File(directory, OBJECTS_DIRECTORY).isDirectory() && !new File(directory, OBJECTS_DIRECTORY).mkdirs()) {
+			throw new IOException("Unable to create export directory " + directory);
+		}
+		final File indexFile = new File(directory, INDEX_FILE);
+		final Set<String> exported = indexFile.exists() ? loadExported(indexFile) : Collections.<String>emptySet();
+		index = new OutputStreamWriter(new FileOutputStream(indexFile, true), UTF8);
+		if (indexFile.length() > 0 && endsMidLine(indexFile)) {
+			/* start on a fresh line rather than completing the cut off record */
+			append("\n", true);
+		}
+		/* backpressure: stop reading the object list while every worker has a queue of objects */
+		final int maxObjectsInFlight = concurrency * 2;
+		final Semaphore objectsInFlight = new Semaphore(maxObjectsInFlight);
+		final ExecutorService workers = Executors.newFixedThreadPool(concurrency, new DaemonThreadFactory("fcrepo-export"));
+		try {
+			while (pids.hasNext()) {
+				final String pid = pids.next();
+				if (exported.contains(pid)) {
+					skippedObjects.incrementAndGet();
+					continue;
+				}
+				objectsInFlight.acquire();
+				workers.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							export(pid);
+						} finally {
+							objectsInFlight.release();
+						}
+					}
+				});
+			}
+			objectsInFlight.acquire(maxObjectsInFlight);
+		} finally {
+			workers.shutdownNow();
+			synchronized (this) {
+				index.close();
+			}
+			endMillis = System.currentTimeMillis();
+		}
+		return getReport();
+	}
+
+	/**
+	 * @return the progress so far, which may be called from another thread while the export runs
+	 */
+	public ExportReport getReport() {
+		long end = (endMillis > 0) ? endMillis : System.currentTimeMillis();
+		return new ExportReport(objects.get(), skippedObjects.get(), datastreams.get(), bytes.get(), failures.get(), end - startMillis);
+	}
+
+	private void export(String pid) {
+		final ObjectGraph graph;
+		final File objectDirectory;
+		final File datastreamDirectory;
+		final Marshaller marshaller;
+		try {
+			graph = client.getObjectGraph(pid);
+			objectDirectory = new File(new File(directory, OBJECTS_DIRECTORY), encode(pid));
+			/* kept apart so that no dsId can clash with the object's own files */
+			datastreamDirectory = new File(objectDirectory, DATASTREAMS_DIRECTORY);
+			if (!datastreamDirectory.isDirectory() && !datastreamDirectory.mkdirs()) {
+				throw new IOException("Unable to create " + datastreamDirectory);
+			}
+			marshaller = client.getContext().createMarshaller();
+			marshaller.marshal(graph.getProfile(), new File(objectDirectory, "object.xml"));
+		} catch (Exception e) {
+			failed(pid, null, e);
+			return;
+		}
+		boolean complete = true;
+		long objectBytes = 0;
+		for (Map.Entry<String, DatastreamProfile> ds : graph.getDatastreamProfiles().entrySet()) {
+			final String dsId = ds.getKey();
+			try {
+				final String name = encode(dsId);
+				marshaller.marshal(ds.getValue(), new File(datastreamDirectory, name + ".xml"));
+				final VerifyingInputStream content = client.getVerifiedDatastreamContent(pid, dsId, ds.getValue(), INDEX_ALGORITHM);
+				final long size = copy(content, new File(datastreamDirectory, name + ".content"));
+				append(DATASTREAM + '\t' + pid + '\t' + dsId + '\t' + size + '\t'
+						+ content.getChecksums().get(INDEX_ALGORITHM) + '\t' + END + '\n', false);
+				objectBytes += size;
+				datastreams.incrementAndGet();
+			} catch (Exception e) {
+				complete = false;
+				failed(pid, dsId, e);
+			}
+		}
+		if (complete) {
+			try {
+				final String lastModified = graph.getProfile().objLastModDate;
+				append(OBJECT + '\t' + pid + '\t' + ((lastModified != null) ? lastModified : "") + '\t' + END + '\n', true);
+				objects.incrementAndGet();
+				listener.objectExported(pid, graph.getDatastreamProfiles().size(), objectBytes);
+			} catch (IOException e) {
+				failed(pid, null, e);
+			}
+		}
+	}
+
+	private long copy(final InputStream content, final File target) throws IOException {
+		try {
+			final OutputStream out = new FileOutputStream(target);
+			try {
+				final byte[] buffer = new byte[64 * 1024];
+				long size = 0;
+				int n;
+				while ((n = content.read(buffer)) != -1) {
+					out.write(buffer, 0, n);
+					size += n;
+					bytes.addAndGet(n);
+				}
+				return size;
+			} finally {
+				out.close();
+			}
+		} finally {
+			content.close();
+		}
+	}
+
+	private void failed(String pid, String dsId, Exception cause) {
+		failures.incrementAndGet();
+		listener.exportFailed(pid, dsId, cause);
+	}
+
+	private synchronized void append(String record, boolean flush) throws IOException {
+		index.write(record);
+		if (flush) {
+			index.flush();
+		}
+	}
+
+	private static Set<String> loadExported(File file) throws IOException {
+		final Set<String> exported = new HashSet<String>();
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				/* keep the trailing field when an object has no last modified date */
+				final String[] fields = line.split("\t", -1);
+				if (fields.length == 4 && OBJECT.equals(fields[0]) && END.equals(fields[3])) {
+					exported.add(fields[1]);
+				}
+			}
+		} finally {
+			IOUtils.closeQuietly(reader);
+		}
+		return exported;
+	}
+
+	private static boolean endsMidLine(File file) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.seek(raf.length() - 1);
+			return raf.read() != '\n';
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static String encode(String id) {
+		try {
+			return URLEncoder.encode(id, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 is required of every JVM", e);
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package org.fcrepo.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Collapses concurrent identical requests into one: the first caller for a key runs the
+ * request and every caller arriving while it is in flight waits for and shares its result.
+ */
+class RequestCoalescer {
+
+	private final ConcurrentMap<String, FutureTask<?>> inFlight = new ConcurrentHashMap<String, FutureTask<?>>();
+
+	@SuppressWarnings("unchecked")
+	<T> T execute(final String key, final Callable<T> request) throws IOException {
+		final FutureTask<T> task = new FutureTask<T>(request);
+		FutureTask<T> shared = (FutureTask<T>) inFlight.putIfAbsent(key, task);
+		if (shared == null) {
+			shared = task;
+			try {
+				task.run();
+			} finally {
+				inFlight.remove(key, task);
+			}
+		}
+		try {
+			return shared.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + key);
+		} catch (ExecutionException e) {
+			throw FedoraClient.launder(e);
+		}
+	}
+
+	int inFlightCount() {
+		return inFlight.size();
+	}
+}
@@ -0,0 +1,39 @@
+package org.fcrepo.client;
+
+/**
+ * Receives instrumentation events from a {@link FedoraClient}. Listeners are called on the
+ * threads making requests, so implementations must be thread-safe and cheap.
+ * When no listener is set the client skips all measurement.
+ */
+public interface RequestListener {
+
+	/**
+	 * A response arrived.
+	 * @param durationNanos the time from sending the request until the response headers were read
+	 */
+	void requestCompleted(Operation operation, int statusCode, long durationNanos);
+
+	/**
+	 * A request failed without a response, e.g. because the connection was refused or timed out.
+	 */
+	void requestFailed(Operation operation, Exception cause, long durationNanos);
+
+	/**
+	 * A response body was unmarshalled.
+	 */
+	void responseUnmarshalled(Operation operation, long durationNanos);
+
+	/**
+	 * A response body was closed after reading the given number of bytes.
+	 */
+	void responseRead(Operation operation, long bytes);
+
+	/**
+	 * The state of the connection pool as a request is about to be sent.
+	 * @param leased connections in use
+	 * @param pending requests waiting for a connection
+	 * @param available idle connections
+	 * @param max the maximum number of connections
+	 */
+	void connectionPoolStatus(int leased, int pending, int available, int max);
+}
@@ -0,0 +1,17 @@
+package org.fcrepo.client;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the client refuses to send a request to protect an overloaded or unhealthy
+ * repository, either because the circuit breaker is open or because no concurrency slot
+ * became free in time.
+ */
+public class RequestRejectedException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	public RequestRejectedException(String message) {
+		super(message);
+	}
+}
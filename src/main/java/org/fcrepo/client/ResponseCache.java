@@ -0,0 +1,99 @@
+package org.fcrepo.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of unmarshalled responses keyed by request URI, used by {@link FedoraClient}
+ * to revalidate with <code>If-None-Match</code>/<code>If-Modified-Since</code> instead of refetching.
+ * The least recently used entry is evicted once the cache is full, and entries older than the
+ * time to live are dropped rather than revalidated.
+ * <p>
+ * Cached objects are shared between all callers and must be treated as read only.
+ */
+public class ResponseCache {
+
+	static class Entry {
+		final Object value;
+		final String etag;
+		final String lastModified;
+		final long storedMillis;
+
+		Entry(Object value, String etag, String lastModified, long storedMillis) {
+			this.value = value;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.storedMillis = storedMillis;
+		}
+	}
+
+	private final long ttlMillis;
+	private final LinkedHashMap<String, Entry> entries;
+	private long hits;
+	private long misses;
+
+	/**
+	 * @param maxEntries the maximum number of responses to keep
+	 * @param ttlMillis how long a response may be revalidated before it is dropped, or 0 to keep it until evicted
+	 */
+	public ResponseCache(final int maxEntries, long ttlMillis) {
+		this.ttlMillis = ttlMillis;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	synchronized Entry get(String uri) {
+		Entry entry = entries.get(uri);
+		if (entry != null && ttlMillis > 0 && System.currentTimeMillis() - entry.storedMillis > ttlMillis) {
+			entries.remove(uri);
+			entry = null;
+		}
+		return entry;
+	}
+
+	/**
+	 * Remember a response if it carries a validator; responses without one can't be revalidated.
+	 */
+	synchronized void put(String uri, Object value, String etag, String lastModified) {
+		if (etag == null && lastModified == null) {
+			entries.remove(uri);
+			return;
+		}
+		entries.put(uri, new Entry(value, etag, lastModified, System.currentTimeMillis()));
+	}
+
+	synchronized void hit() {
+		hits++;
+	}
+
+	synchronized void miss() {
+		misses++;
+	}
+
+	public synchronized void invalidate(String uri) {
+		entries.remove(uri);
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/** @return the number of requests answered from the cache after a 304 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+}
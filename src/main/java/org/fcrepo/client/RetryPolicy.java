@@ -0,0 +1,62 @@
+package org.fcrepo.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Random;
+
+import org.apache.http.client.HttpResponseException;
+
+/**
+ * Retries idempotent reads which failed on the network or with a server error, sleeping a
+ * random "full jitter" delay between zero and an exponentially growing cap before each retry,
+ * so that many clients retrying at once do not hit the repository in lockstep.
+ */
+public class RetryPolicy {
+
+	private final int maxAttempts;
+	private final long baseDelayMillis;
+	private final long maxDelayMillis;
+	private final Random random = new Random();
+
+	/**
+	 * @param maxAttempts the total number of attempts, including the first
+	 * @param baseDelayMillis the cap on the delay before the first retry, doubled for each further retry
+	 * @param maxDelayMillis the largest delay between attempts
+	 */
+	public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("At least one attempt is required");
+		}
+		this.maxAttempts = maxAttempts;
+		this.baseDelayMillis = baseDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Client errors won't change on retry, and requests rejected to protect the repository must not be retried.
+	 */
+	boolean isRetryable(IOException failure) {
+		if (failure instanceof RequestRejectedException || failure instanceof InterruptedIOException) {
+			return false;
+		}
+		if (failure instanceof HttpResponseException) {
+			final int status = ((HttpResponseException) failure).getStatusCode();
+			return status >= 500 || status == 429;
+		}
+		return true;
+	}
+
+	/**
+	 * @param retry the number of the retry, starting at 1
+	 */
+	long getDelayMillis(int retry) {
+		final long cap = Math.min(maxDelayMillis, baseDelayMillis << Math.min(retry - 1, 30));
+		synchronized (random) {
+			return (cap > 0) ? (long) (random.nextDouble() * cap) : 0;
+		}
+	}
+}
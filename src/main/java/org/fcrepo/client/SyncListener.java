@@ -0,0 +1,21 @@
+package org.fcrepo.client;
+
+import java.util.Set;
+
+/**
+ * Receives the changes found by an {@link IncrementalSync}. Implementations are called
+ * concurrently from the sync's worker threads.
+ */
+public interface SyncListener {
+
+	void objectAdded(ObjectGraph object);
+
+	/**
+	 * @param changedDatastreams the dsids of the datastreams which were added, removed or whose checksum changed
+	 */
+	void objectChanged(ObjectGraph object, Set<String> changedDatastreams);
+
+	void objectDeleted(String pid);
+
+	void syncFailed(String pid, Exception cause);
+}
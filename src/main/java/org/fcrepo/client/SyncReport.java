@@ -0,0 +1,54 @@
+package org.fcrepo.client;
+
+/**
+ * The outcome of an {@link IncrementalSync} run.
+ */
+public class SyncReport {
+
+	private final long added;
+	private final long changed;
+	private final long unchanged;
+	private final long deleted;
+	private final long failures;
+	private final long elapsedMillis;
+
+	SyncReport(long added, long changed, long unchanged, long deleted, long failures, long elapsedMillis) {
+		this.added = added;
+		this.changed = changed;
+		this.unchanged = unchanged;
+		this.deleted = deleted;
+		this.failures = failures;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	public long getAdded() {
+		return added;
+	}
+
+	public long getChanged() {
+		return changed;
+	}
+
+	/** @return the number of objects whose profile showed no modification since the last run */
+	public long getUnchanged() {
+		return unchanged;
+	}
+
+	public long getDeleted() {
+		return deleted;
+	}
+
+	public long getFailures() {
+		return failures;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d added, %d changed, %d unchanged, %d deleted, %d failures in %d ms",
+				added, changed, unchanged, deleted, failures, elapsedMillis);
+	}
+}
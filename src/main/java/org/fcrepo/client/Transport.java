@@ -0,0 +1,35 @@
+package org.fcrepo.client;
+
+import java.io.IOException;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * Sends the requests built by {@link FedoraClient} to the repository. Requests and responses
+ * are HttpCore messages whatever carries them, so the client above does not depend on the
+ * transport. Implementations must be safe for use by many threads at once.
+ * <p>
+ * A response entity is released by reading it to the end and closing its content, or by
+ * aborting the request, which implementations honour for requests that are
+ * {@link org.apache.http.client.methods.AbortableHttpRequest abortable}.
+ *
+ * @see ApacheTransport
+ * @see JdkTransport
+ * @see InMemoryTransport
+ */
+public interface Transport {
+
+	HttpResponse execute(HttpUriRequest request) throws IOException;
+
+	/**
+	 * @return the number of requests the transport can usefully have in flight at once,
+	 * which sizes the executor for the asynchronous operations and bounds the hedged requests
+	 */
+	int getMaxConcurrency();
+
+	/**
+	 * Release the connections and threads held by the transport.
+	 */
+	void shutdown();
+}
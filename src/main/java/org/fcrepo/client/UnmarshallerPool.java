@@ -0,0 +1,40 @@
+package org.fcrepo.client;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+
+/**
+ * A bounded pool of {@link Unmarshaller}s created from a shared, thread-safe
+ * {@link JAXBContext}. Unmarshallers are not thread-safe, so each one is lent to a
+ * single caller at a time. Borrowing never blocks: when the pool is empty a new
+ * unmarshaller is created, and released unmarshallers beyond the capacity are dropped.
+ */
+class UnmarshallerPool {
+
+	private final JAXBContext context;
+	private final BlockingQueue<Unmarshaller> idle;
+
+	UnmarshallerPool(JAXBContext context, int capacity) {
+		this.context = context;
+		this.idle = new ArrayBlockingQueue<Unmarshaller>(capacity);
+	}
+
+	Unmarshaller borrow() throws JAXBException {
+		Unmarshaller unmarshaller = idle.poll();
+		return (unmarshaller != null) ? unmarshaller : context.createUnmarshaller();
+	}
+
+	void release(Unmarshaller unmarshaller) {
+		if (unmarshaller != null) {
+			idle.offer(unmarshaller);
+		}
+	}
+
+	int idleCount() {
+		return idle.size();
+	}
+}
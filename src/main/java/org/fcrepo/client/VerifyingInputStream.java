@@ -0,0 +1,163 @@
+package org.fcrepo.client;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Computes one or more digests of a stream while it is being read, and compares the
+ * expected checksum when the end of the stream is reached. A mismatch is reported by a
+ * {@link FixityException} from the read which hits the end of the stream, so a consumer
+ * copying the stream verifies it in the same pass without any extra buffering.
+ */
+public class VerifyingInputStream extends FilterInputStream {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final Map<String, MessageDigest> digests = new LinkedHashMap<String, MessageDigest>();
+	private final String expectedAlgorithm;
+	private final String expectedChecksum;
+	private Map<String, String> checksums;
+
+	/**
+	 * @param in the content
+	 * @param expectedAlgorithm the algorithm of the expected checksum, or null to only compute digests
+	 * @param expectedChecksum the expected checksum as a hex string, or null to only compute digests
+	 * @param algorithms any additional digests to compute, such as "SHA-256" or "MD5"
+	 */
+	public VerifyingInputStream(InputStream in, String expectedAlgorithm, String expectedChecksum, String... algorithms) throws IOException {
+		super(in);
+		this.expectedAlgorithm = (expectedAlgorithm != null && expectedChecksum != null) ? normalize(expectedAlgorithm) : null;
+		this.expectedChecksum = (this.expectedAlgorithm != null) ? expectedChecksum.trim().toLowerCase(Locale.ENGLISH) : null;
+		if (this.expectedAlgorithm != null) {
+			addDigest(this.expectedAlgorithm);
+		}
+		for (String algorithm : algorithms) {
+			addDigest(normalize(algorithm));
+		}
+	}
+
+	private void addDigest(String algorithm) throws IOException {
+		if (!digests.containsKey(algorithm)) {
+			try {
+				digests.put(algorithm, MessageDigest.getInstance(algorithm));
+			} catch (NoSuchAlgorithmException e) {
+				throw new IOException("Unsupported checksum algorithm " + algorithm, e);
+			}
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b == -1) {
+			finish();
+		} else {
+			for (MessageDigest digest : digests.values()) {
+				digest.update((byte) b);
+			}
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = super.read(b, off, len);
+		if (n == -1) {
+			finish();
+		} else {
+			for (MessageDigest digest : digests.values()) {
+				digest.update(b, off, n);
+			}
+		}
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		if (n <= 0) {
+			return 0;
+		}
+		/* skipped bytes still have to be digested */
+		byte[] buffer = new byte[(int) Math.min(n, 8192)];
+		long skipped = 0;
+		while (skipped < n) {
+			int count = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+			if (count == -1) {
+				break;
+			}
+			skipped += count;
+		}
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	private void finish() throws IOException {
+		if (checksums != null) {
+			return;
+		}
+		Map<String, String> computed = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, MessageDigest> digest : digests.entrySet()) {
+			computed.put(digest.getKey(), toHex(digest.getValue().digest()));
+		}
+		checksums = Collections.unmodifiableMap(computed);
+		if (expectedAlgorithm != null && !expectedChecksum.equals(checksums.get(expectedAlgorithm))) {
+			throw new FixityException(expectedAlgorithm, expectedChecksum, checksums.get(expectedAlgorithm));
+		}
+	}
+
+	/**
+	 * @return true once the stream has been read to the end and matched the expected checksum
+	 */
+	public boolean isVerified() {
+		return checksums != null && expectedAlgorithm != null && expectedChecksum.equals(checksums.get(expectedAlgorithm));
+	}
+
+	/**
+	 * @return the computed checksums as hex strings keyed by algorithm
+	 * @throws IllegalStateException if the stream has not been read to the end
+	 */
+	public Map<String, String> getChecksums() {
+		if (checksums == null) {
+			throw new IllegalStateException("The stream has not been read to the end");
+		}
+		return checksums;
+	}
+
+	/* accept the spellings used by fedora, e.g. SHA1 or sha-256, as well as the JCA names */
+	static String normalize(String algorithm) {
+		String name = algorithm.trim().toUpperCase(Locale.ENGLISH);
+		if (name.startsWith("SHA") && !name.startsWith("SHA-") && name.length() > 3) {
+			name = "SHA-" + name.substring(3);
+		}
+		return name;
+	}
+
+	private static String toHex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+			chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+}
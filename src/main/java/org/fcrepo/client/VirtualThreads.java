@@ -0,0 +1,62 @@
+package org.fcrepo.client;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates executors which start a virtual thread per task on JVMs which have them (Java 21
+ * and later). The client is built for older JVMs, so virtual threads are reached by reflection.
+ */
+final class VirtualThreads {
+
+	private static final Method OF_VIRTUAL;
+	private static final Method NAME;
+	private static final Method FACTORY;
+	private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+	static {
+		Method ofVirtual = null;
+		Method name = null;
+		Method factory = null;
+		Method newThreadPerTaskExecutor = null;
+		try {
+			final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			name = builder.getMethod("name", String.class, long.class);
+			factory = builder.getMethod("factory");
+			newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+		} catch (Exception e) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		NAME = name;
+		FACTORY = factory;
+		NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+	}
+
+	private VirtualThreads() {
+	}
+
+	static boolean isAvailable() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * @param prefix the name of the threads, which are numbered from 0
+	 * @throws UnsupportedOperationException if the JVM has no virtual threads
+	 */
+	static ExecutorService newExecutor(String prefix) {
+		if (!isAvailable()) {
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or later, this is "
+					+ System.getProperty("java.version"));
+		}
+		try {
+			final Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 0L);
+			return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, FACTORY.invoke(builder));
+		} catch (Exception e) {
+			throw new UnsupportedOperationException("Unable to create virtual threads", e);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package org.fcrepo.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+	private static final long FAST = TimeUnit.MILLISECONDS.toNanos(5);
+	private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+	@Test
+	public void testIncreaseAndDecrease() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 2, 8, 100, 0);
+		for (int i = 0; i < 100; i++) {
+			limiter.acquire();
+			limiter.release(FAST, true);
+		}
+		assertEquals(8, limiter.getLimit());
+		for (int i = 0; i < 100; i++) {
+			limiter.acquire();
+			limiter.release(SLOW, true);
+		}
+		assertEquals(2, limiter.getLimit());
+		limiter.acquire();
+		limiter.release(FAST, false);
+		assertEquals(2, limiter.getLimit());
+		assertEquals(0, limiter.getInFlight());
+	}
+
+	@Test
+	public void testRejectWhenFull() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 100, 10);
+		limiter.acquire();
+		long start = System.nanoTime();
+		try {
+			limiter.acquire();
+		} catch (RequestRejectedException e) {
+			assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(10));
+			return;
+		}
+		throw new AssertionError("Expected the second request to be rejected");
+	}
+}
@@ -0,0 +1,134 @@
+package org.fcrepo.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.fcrepo.jaxb.responses.access.ObjectProfile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchTest {
+
+	private FedoraClient client;
+	private Batch batch;
+
+	@Before
+	public void setUp() {
+		InMemoryTransport transport = new InMemoryTransport();
+		transport.setDefaultHandler(new InMemoryTransport.Handler() {
+			@Override
+			public HttpResponse handle(HttpUriRequest request) throws IOException {
+				String pid = request.getURI().getPath().substring("/fcrepo/rest/objects/".length());
+				if (pid.startsWith("fail:")) {
+					return InMemoryTransport.response(404, null, null);
+				}
+				if (pid.startsWith("slow:")) {
+					try {
+						Thread.sleep(200);
+					} catch (InterruptedException e) {
+						throw new IOException(e);
+					}
+				}
+				return InMemoryTransport.response(200, "text/xml", ("<objectProfile pid=\"" + pid
+						+ "\" xmlns=\"http://www.fedora.info/definitions/1/0/access/\"/>").getBytes());
+			}
+		});
+		client = new FedoraClient(transport);
+		client.setFedoraUri("http://localhost/fcrepo");
+		batch = new Batch(client);
+		batch.setParallelism(4);
+	}
+
+	@After
+	public void tearDown() {
+		client.shutdown();
+	}
+
+	@Test
+	public void testOrdered() {
+		List<BatchResult<String, ObjectProfile>> results = collect(batch.getObjectProfiles(
+				Arrays.asList("slow:1", "test:2", "fail:3", "test:4").iterator()));
+		assertEquals(4, results.size());
+		for (int i = 0; i < results.size(); i++) {
+			assertEquals(i, results.get(i).getIndex());
+		}
+		assertEquals("slow:1", results.get(0).getValue().pid);
+		assertFalse(results.get(2).isSuccess());
+		assertEquals(404, ((HttpResponseException) results.get(2).getError()).getStatusCode());
+		assertTrue(results.get(3).isSuccess());
+	}
+
+	@Test
+	public void testCompletionOrder() {
+		batch.setOrdered(false);
+		List<BatchResult<String, ObjectProfile>> results = collect(batch.getObjectProfiles(
+				Arrays.asList("slow:1", "test:2", "test:3").iterator()));
+		assertEquals("slow:1", results.get(2).getItem());
+	}
+
+	@Test
+	public void testBoundedMemory() {
+		for (boolean ordered : new boolean[] {true, false}) {
+			batch.setOrdered(ordered);
+			List<String> pids = new ArrayList<String>();
+			for (int i = 0; i < 500; i++) {
+				pids.add("test:" + i);
+			}
+			BatchIterator<String, ObjectProfile> results = batch.getObjectProfiles(pids.iterator());
+			int count = 0;
+			while (results.hasNext()) {
+				results.next();
+				count++;
+				assertTrue(results.getRetainedResults() <= results.getWindow());
+			}
+			assertEquals(500, count);
+			assertEquals(0, results.getRetainedResults());
+		}
+	}
+
+	@Test
+	public void testInputReadLazily() {
+		final AtomicInteger read = new AtomicInteger();
+		Iterator<String> pids = new Iterator<String>() {
+			@Override
+			public boolean hasNext() {
+				return read.get() < 1000;
+			}
+
+			@Override
+			public String next() {
+				return "test:" + read.incrementAndGet();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+		BatchIterator<String, ObjectProfile> results = batch.getObjectProfiles(pids);
+		assertEquals("test:1", results.next().getItem());
+		assertTrue(read.get() <= 9);
+		results.close();
+		assertFalse(results.hasNext());
+	}
+
+	private static <I, T> List<BatchResult<I, T>> collect(Iterator<BatchResult<I, T>> results) {
+		List<BatchResult<I, T>> list = new ArrayList<BatchResult<I, T>>();
+		while (results.hasNext()) {
+			list.add(results.next());
+		}
+		return list;
+	}
+}
@@ -0,0 +1,49 @@
+package org.fcrepo.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.fcrepo.client.CircuitBreaker.State;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+	@Test
+	public void testOpenAndRecover() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker(2, 50);
+		breaker.acquire();
+		breaker.record(false);
+		assertEquals(State.CLOSED, breaker.getState());
+		breaker.acquire();
+		breaker.record(false);
+		assertEquals(State.OPEN, breaker.getState());
+		try {
+			breaker.acquire();
+			fail("Expected the open breaker to reject");
+		} catch (RequestRejectedException e) {
+			// fail fast
+		}
+		Thread.sleep(60);
+		breaker.acquire();
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		try {
+			breaker.acquire();
+			fail("Only one trial request is allowed");
+		} catch (RequestRejectedException e) {
+			// the trial is in flight
+		}
+		breaker.record(true);
+		assertEquals(State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void testFailedTrialReopens() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker(1, 10);
+		breaker.acquire();
+		breaker.record(false);
+		Thread.sleep(20);
+		breaker.acquire();
+		breaker.record(false);
+		assertEquals(State.OPEN, breaker.getState());
+	}
+}
@@ -0,0 +1,211 @@
+package org.fcrepo.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.fcrepo.jaxb.responses.management.DatastreamProfile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ContentCacheTest {
+
+	private static final String CONTENT = "/fcrepo/rest/objects/test:1/datastreams/ds1/content";
+	/* the SHA-1 of "content" */
+	private static final String SHA1 = "040f06fd774092478d450774f5ba30c5da78acc8";
+
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = File.createTempFile("content", "cache");
+		directory.delete();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	@Test
+	public void testCacheAndEvict() throws IOException {
+		ContentCache cache = new ContentCache(directory, 10);
+		assertNull(cache.get("a"));
+		assertEquals(6, IOUtils.toByteArray(cache.cache("a", content("aaaaaa"))).length);
+		assertEquals("aaaaaa", IOUtils.toString(cache.get("a")));
+		IOUtils.toByteArray(cache.cache("b", content("bbbbbb")));
+		assertNull(cache.get("a"));
+		assertEquals(6, cache.getSize());
+
+		/* entries survive a restart, partial reads are not cached */
+		cache = new ContentCache(directory, 10);
+		assertEquals("bbbbbb", IOUtils.toString(cache.get("b")));
+		InputStream partial = cache.cache("c", content("cccccc"));
+		partial.read();
+		partial.close();
+		assertNull(cache.get("c"));
+		assertEquals(1, directory.list().length);
+	}
+
+	@Test
+	public void testChecksumKeyedContent() throws IOException {
+		InMemoryTransport transport = new InMemoryTransport();
+		transport.setResponse(CONTENT, 200, "text/plain", "content".getBytes());
+		FedoraClient client = new FedoraClient(transport);
+		client.setFedoraUri("http://localhost/fcrepo");
+		client.setContentCache(new ContentCache(directory, 1024));
+		DatastreamProfile profile = new DatastreamProfile();
+		profile.dsChecksumType = "SHA-1";
+		profile.dsChecksum = URI.create("urn:sha1:" + SHA1);
+		assertEquals("content", IOUtils.toString(client.getDatastreamContent("test:1", "ds1", profile)));
+		assertEquals("content", IOUtils.toString(client.getVerifiedDatastreamContent("test:1", "ds1", profile)));
+		assertEquals(1, transport.getRequestCount());
+
+		/* a verified read caches the content too, and serves it again with extra digests */
+		client.setContentCache(new ContentCache(new File(directory, "verified"), 1024));
+		VerifyingInputStream verified = client.getVerifiedDatastreamContent("test:1", "ds1", profile, "MD5");
+		assertEquals("content", IOUtils.toString(verified));
+		assertTrue(verified.isVerified());
+		assertEquals(2, transport.getRequestCount());
+		verified = client.getVerifiedDatastreamContent("test:1", "ds1", profile, "MD5");
+		assertEquals("content", IOUtils.toString(verified));
+		assertTrue(verified.isVerified());
+		assertEquals(2, verified.getChecksums().size());
+		assertEquals(2, transport.getRequestCount());
+
+		/* content which fails verification is not cached */
+		profile.dsChecksum = URI.create("urn:sha1:0000");
+		for (int i = 0; i < 4; i++) {
+			try {
+				if (i % 2 == 0) {
+					IOUtils.toString(client.getDatastreamContent("test:1", "ds1", profile));
+				} else {
+					IOUtils.toString(client.getVerifiedDatastreamContent("test:1", "ds1", profile));
+				}
+				fail("Expected a fixity failure");
+			} catch (FixityException e) {
+				// not what the profile promised
+			}
+		}
+		assertEquals(6, transport.getRequestCount());
+	}
+
+	@Test
+	public void testETagRevalidation() throws IOException {
+		InMemoryTransport transport = new InMemoryTransport();
+		transport.setHandler(CONTENT, new InMemoryTransport.Handler() {
+			@Override
+			public HttpResponse handle(HttpUriRequest request) {
+				if (request.getFirstHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+					return InMemoryTransport.response(304, null, null);
+				}
+				HttpResponse resp = InMemoryTransport.response(200, "text/plain", "content".getBytes());
+				resp.setHeader(HttpHeaders.ETAG, "\"v1\"");
+				return resp;
+			}
+		});
+		FedoraClient client = new FedoraClient(transport);
+		client.setFedoraUri("http://localhost/fcrepo");
+		ContentCache cache = new ContentCache(directory, 1024);
+		client.setContentCache(cache);
+		assertEquals("content", IOUtils.toString(client.getDatastreamContent("test:1", "ds1")));
+		assertEquals("content", IOUtils.toString(client.getDatastreamContent("test:1", "ds1")));
+		assertEquals(1, cache.getHits());
+		assertEquals(2, transport.getRequestCount());
+
+		/* a file deleted from outside the cache is fetched again once, unconditionally */
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		assertEquals("content", IOUtils.toString(client.getDatastreamContent("test:1", "ds1")));
+		assertEquals(4, transport.getRequestCount());
+		assertEquals("content", IOUtils.toString(client.getDatastreamContent("test:1", "ds1")));
+		assertEquals(5, transport.getRequestCount());
+		assertEquals(2, cache.getHits());
+	}
+
+	@Test
+	public void testSameETagOnDifferentDatastreams() throws IOException {
+		InMemoryTransport transport = new InMemoryTransport();
+		for (final String dsId : new String[] {"ds1", "ds2"}) {
+			transport.setHandler("/fcrepo/rest/objects/test:1/datastreams/" + dsId + "/content", new InMemoryTransport.Handler() {
+				@Override
+				public HttpResponse handle(HttpUriRequest request) {
+					if (request.getFirstHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+						return InMemoryTransport.response(304, null, null);
+					}
+					HttpResponse resp = InMemoryTransport.response(200, "text/plain", ("content of " + dsId).getBytes());
+					/* version-style ETags repeat across resources */
+					resp.setHeader(HttpHeaders.ETAG, "\"1\"");
+					return resp;
+				}
+			});
+		}
+		FedoraClient client = new FedoraClient(transport);
+		client.setFedoraUri("http://localhost/fcrepo");
+		ContentCache cache = new ContentCache(directory, 1024);
+		client.setContentCache(cache);
+		assertEquals("content of ds1", IOUtils.toString(client.getDatastreamContent("test:1", "ds1")));
+		assertEquals("content of ds2", IOUtils.toString(client.getDatastreamContent("test:1", "ds2")));
+		assertEquals("content of ds1", IOUtils.toString(client.getDatastreamContent("test:1", "ds1")));
+		assertEquals("content of ds2", IOUtils.toString(client.getDatastreamContent("test:1", "ds2")));
+		assertEquals(2, cache.getEntryCount());
+		assertEquals(2, cache.getHits());
+	}
+
+	@Test
+	public void testETagsSurviveRestart() throws IOException {
+		final String[] version = {"v1"};
+		InMemoryTransport transport = new InMemoryTransport();
+		transport.setHandler(CONTENT, new InMemoryTransport.Handler() {
+			@Override
+			public HttpResponse handle(HttpUriRequest request) {
+				final String etag = "\"" + version[0] + "\"";
+				if (request.getFirstHeader(HttpHeaders.IF_NONE_MATCH) != null
+						&& etag.equals(request.getFirstHeader(HttpHeaders.IF_NONE_MATCH).getValue())) {
+					return InMemoryTransport.response(304, null, null);
+				}
+				HttpResponse resp = InMemoryTransport.response(200, "text/plain", ("content " + version[0]).getBytes());
+				resp.setHeader(HttpHeaders.ETAG, etag);
+				return resp;
+			}
+		});
+		FedoraClient client = new FedoraClient(transport);
+		client.setFedoraUri("http://localhost/fcrepo");
+		client.setContentCache(new ContentCache(directory, 1024));
+		assertEquals("content v1", IOUtils.toString(client.getDatastreamContent("test:1", "ds1")));
+
+		/* a new cache over the same directory can still revalidate */
+		client = new FedoraClient(transport);
+		client.setFedoraUri("http://localhost/fcrepo");
+		ContentCache cache = new ContentCache(directory, 1024);
+		client.setContentCache(cache);
+		assertEquals("content v1", IOUtils.toString(client.getDatastreamContent("test:1", "ds1")));
+		assertEquals(1, cache.getHits());
+		assertEquals(2, transport.getRequestCount());
+
+		/* a new version replaces the old one */
+		version[0] = "v2";
+		assertEquals("content v2", IOUtils.toString(client.getDatastreamContent("test:1", "ds1")));
+		assertEquals(1, cache.getEntryCount());
+		assertEquals(1, new ContentCache(directory, 1024).getEntryCount());
+	}
+
+	private static InputStream content(String content) {
+		return new ByteArrayInputStream(content.getBytes());
+	}
+}
@@ -0,0 +1,27 @@
+package org.fcrepo.client;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+public class CountingEntityTest {
+
+	@Test
+	public void testBytesReportedOnce() throws IOException {
+		RequestListener listener = mock(RequestListener.class);
+		CountingEntity entity = new CountingEntity(new InputStreamEntity(new ByteArrayInputStream(new byte[1000]), 1000),
+				Operation.DATASTREAM_CONTENT, listener);
+		entity.getContent().read(new byte[100]);
+		entity.getContent().read(new byte[100]);
+		EntityUtils.consume(entity);
+		verify(listener).responseRead(Operation.DATASTREAM_CONTENT, 200);
+		verifyNoMoreInteractions(listener);
+	}
+}
@@ -0,0 +1,184 @@
+package org.fcrepo.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class DatastreamDownloadTest {
+
+	private static final byte[] CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz".getBytes();
+
+	private HttpClient mockClient;
+	private FedoraClient fedora;
+	private File target;
+	private final AtomicInteger failuresLeft = new AtomicInteger();
+	private final AtomicInteger rangeRequests = new AtomicInteger();
+	private final AtomicInteger misalignedLeft = new AtomicInteger();
+
+	@Before
+	public void setUp() throws IOException {
+		mockClient = mock(HttpClient.class);
+		fedora = new FedoraClient(mockClient);
+		fedora.setFedoraUri("http://testhost.info:8080/fcrepo");
+		target = File.createTempFile("download", ".bin");
+		when(mockClient.execute(any(HttpUriRequest.class))).thenAnswer(new Answer<HttpResponse>() {
+			@Override
+			public HttpResponse answer(InvocationOnMock invocation) {
+				return respond((HttpUriRequest) invocation.getArguments()[0]);
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		target.delete();
+	}
+
+	@Test
+	public void testRangedDownload() throws IOException {
+		DatastreamDownload download = new DatastreamDownload(fedora, "test:object1", "test:ds1");
+		download.setChunkSize(10);
+		assertEquals(CONTENT.length, download.downloadTo(target));
+		assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(target));
+		assertEquals(4, rangeRequests.get());
+	}
+
+	@Test
+	public void testResumeMissingRanges() throws IOException {
+		failuresLeft.set(2);
+		DatastreamDownload download = new DatastreamDownload(fedora, "test:object1", "test:ds1");
+		download.setChunkSize(10);
+		download.setConcurrency(1);
+		assertEquals(CONTENT.length, download.downloadTo(target));
+		assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(target));
+		assertEquals(6, rangeRequests.get());
+	}
+
+	@Test
+	public void testGiveUpAfterMaxAttempts() throws IOException {
+		failuresLeft.set(100);
+		DatastreamDownload download = new DatastreamDownload(fedora, "test:object1", "test:ds1");
+		download.setChunkSize(10);
+		download.setMaxAttempts(2);
+		try {
+			download.downloadTo(target);
+			fail("Expected the download to fail");
+		} catch (IOException e) {
+			assertEquals(8, rangeRequests.get());
+		}
+	}
+
+	@Test
+	public void testRangedDownloadWithContentCompression() throws IOException {
+		fedora.setContentCompression(true);
+		DatastreamDownload download = new DatastreamDownload(fedora, "test:object1", "test:ds1");
+		download.setChunkSize(10);
+		assertEquals(CONTENT.length, download.downloadTo(target));
+		assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(target));
+		assertEquals(4, rangeRequests.get());
+	}
+
+	@Test
+	public void testMisalignedRange() throws IOException {
+		misalignedLeft.set(1);
+		DatastreamDownload download = new DatastreamDownload(fedora, "test:object1", "test:ds1");
+		download.setChunkSize(10);
+		download.setConcurrency(1);
+		assertEquals(CONTENT.length, download.downloadTo(target));
+		assertArrayEquals(CONTENT, FileUtils.readFileToByteArray(target));
+		assertEquals(5, rangeRequests.get());
+	}
+
+	@Test
+	public void testContentRange() {
+		DatastreamDownload.Range range = new DatastreamDownload.Range(10, 19);
+		assertTrue(DatastreamDownload.matches("bytes 10-19/36", range, 36));
+		assertTrue(DatastreamDownload.matches("bytes 10-19/*", range, 36));
+		assertFalse(DatastreamDownload.matches("bytes 0-9/36", range, 36));
+		assertFalse(DatastreamDownload.matches("bytes 10-19/40", range, 36));
+		assertFalse(DatastreamDownload.matches("bytes */36", range, 36));
+		assertFalse(DatastreamDownload.matches("10-19/36", range, 36));
+	}
+
+	@Test(expected = HttpResponseException.class)
+	public void testMissingDatastream() throws IOException {
+		new DatastreamDownload(fedora, "test:object1", "fail:ds").downloadTo(target);
+	}
+
+	private HttpResponse respond(HttpUriRequest request) {
+		if (request.getURI().toString().contains("fail:ds")) {
+			return new BasicHttpResponse(HttpVersion.HTTP_1_1, 404, "Not Found");
+		}
+		if ("HEAD".equals(request.getMethod())) {
+			BasicHttpResponse resp = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+			if (request.containsHeader(HttpHeaders.ACCEPT_ENCODING)) {
+				/* the length the content would have compressed */
+				resp.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+				resp.setHeader(HttpHeaders.CONTENT_LENGTH, Integer.toString(CONTENT.length / 2));
+				resp.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+				return resp;
+			}
+			resp.setHeader(HttpHeaders.CONTENT_LENGTH, Integer.toString(CONTENT.length));
+			resp.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+			return resp;
+		}
+		rangeRequests.incrementAndGet();
+		String[] range = request.getFirstHeader(HttpHeaders.RANGE).getValue().substring("bytes=".length()).split("-");
+		int first = Integer.parseInt(range[0]);
+		int last = Integer.parseInt(range[1]);
+		if (first > 0 && misalignedLeft.getAndDecrement() > 0) {
+			/* a server which ignores the offset and sends the start of the content */
+			last -= first;
+			first = 0;
+		}
+		InputStream body = new ByteArrayInputStream(Arrays.copyOfRange(CONTENT, first, last + 1));
+		if (failuresLeft.getAndDecrement() > 0) {
+			/* deliver a few bytes and then drop the connection */
+			body = new FilterInputStream(body) {
+				private int delivered;
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					if (delivered >= 3) {
+						throw new IOException("Connection reset");
+					}
+					int n = super.read(b, off, Math.min(len, 3 - delivered));
+					delivered += n;
+					return n;
+				}
+			};
+		}
+		BasicHttpResponse resp = new BasicHttpResponse(HttpVersion.HTTP_1_1, 206, "Partial Content");
+		resp.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + first + "-" + last + "/" + CONTENT.length);
+		resp.setEntity(new InputStreamEntity(body, last - first + 1));
+		return resp;
+	}
+}
@@ -0,0 +1,54 @@
+package org.fcrepo.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.xml.bind.JAXBException;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.AbortableHttpRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DatastreamIteratorTest {
+
+	private UnmarshallerPool pool;
+
+	@Before
+	public void setUp() throws JAXBException {
+		pool = new UnmarshallerPool(new FedoraClient(mock(HttpClient.class)).getContext(), 1);
+	}
+
+	@Test
+	public void testManyDatastreams() throws IOException {
+		StringBuilder xml = new StringBuilder("<objectDatastreams pid=\"test:object1\" xmlns=\"http://www.fedora.info/definitions/1/0/access/\"><datastreams>");
+		for (int i = 0; i < 5000; i++) {
+			xml.append("<datastream dsid=\"ds").append(i).append("\" label=\"ds\" mimeType=\"text/plain\"/>");
+			if (i % 2 == 0) {
+				xml.append('\n');
+			}
+		}
+		xml.append("</datastreams></objectDatastreams>");
+		DatastreamIterator datastreams = new DatastreamIterator(new ByteArrayInputStream(xml.toString().getBytes()), pool, null);
+		int count = 0;
+		while (datastreams.hasNext()) {
+			assertEquals("ds" + count, datastreams.next().dsid);
+			count++;
+		}
+		assertEquals(5000, count);
+		assertEquals(1, pool.idleCount());
+	}
+
+	@Test
+	public void testEarlyCloseAbortsRequest() throws IOException {
+		AbortableHttpRequest request = mock(AbortableHttpRequest.class);
+		DatastreamIterator datastreams = new DatastreamIterator(getClass().getResourceAsStream("good-datastreams.xml"), pool, request);
+		datastreams.close();
+		verify(request).abort();
+		assertEquals(1, pool.idleCount());
+	}
+}
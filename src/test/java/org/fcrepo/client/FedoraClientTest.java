@@ -3,44 +3,68 @@ package org.fcrepo.client;
 import static org.fcrepo.client.GetMatcher.getLike;
 import static org.fcrepo.client.GetMatcher.getNotLike;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.lang.reflect.Method;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.ws.rs.Path;
 import javax.ws.rs.core.Request;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicHeader;
 import org.fcrepo.api.FedoraDatastreams;
 import org.fcrepo.api.FedoraObjects;
 import org.fcrepo.jaxb.responses.access.ObjectDatastreams;
+import org.fcrepo.jaxb.responses.access.ObjectDatastreams.DatastreamElement;
 import org.fcrepo.jaxb.responses.access.ObjectProfile;
 import org.fcrepo.jaxb.responses.management.DatastreamFixity;
 import org.fcrepo.jaxb.responses.management.DatastreamProfile;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 public class FedoraClientTest {
 	
@@ -89,6 +113,24 @@ public class FedoraClientTest {
 		assertNotNull(testObj.getUnmarshaller());
 	}
 	
+	@Test
+	public void testContextShared() throws JAXBException {
+		FedoraClient other = new FedoraClient(mockClient);
+		assertSame(testObj.getContext(), other.getContext());
+	}
+	
+	@Test
+	public void testUnmarshallerPooled() throws JAXBException {
+		UnmarshallerPool pool = new UnmarshallerPool(testObj.getContext(), 1);
+		Unmarshaller first = pool.borrow();
+		Unmarshaller second = pool.borrow();
+		assertNotSame(first, second);
+		pool.release(first);
+		pool.release(second);
+		assertEquals(1, pool.idleCount());
+		assertSame(first, pool.borrow());
+	}
+	
 	@Test
 	public void testUriSetter() {
 		URI expected = URI.create(MOCK_URI);
@@ -126,6 +168,385 @@ public class FedoraClientTest {
 		}
 	}
 	
+	@Test
+	public void testConnectionReleasedOnError() throws IOException {
+		HttpResponse bad = mock(HttpResponse.class);
+		mock404(bad);
+		InputStream content = bad.getEntity().getContent();
+		when(bad.getEntity().isStreaming()).thenReturn(true);
+		when(mockClient.execute(any(HttpGet.class))).thenReturn(bad);
+		try {
+			testObj.getObjectProfile("fail:object");
+			fail("Expected a 404");
+		} catch (HttpResponseException e) {
+			assertEquals(404, e.getStatusCode());
+		}
+		verify(content).close();
+	}
+	
+	@Test
+	public void testObjectProfileAsync() throws Exception {
+		String id = "test:object1";
+		HttpGet expected = testObj.getObjectProfileRequest(id);
+		HttpResponse good = mock(HttpResponse.class);
+		mock200(good, "good-profile.xml");
+		when(mockClient.execute(getLike(expected))).thenReturn(good);
+		ObjectProfile profile = testObj.getObjectProfileAsync(id).get(5, TimeUnit.SECONDS);
+		assertEquals(id, profile.pid);
+		HttpResponse bad = mock(HttpResponse.class);
+		mock404(bad);
+		when(mockClient.execute(getNotLike(expected))).thenReturn(bad);
+		try {
+			testObj.getObjectProfileAsync("fail:object").get(5, TimeUnit.SECONDS);
+			fail("Expected a 404");
+		} catch (ExecutionException e) {
+			assertEquals(404, ((HttpResponseException) e.getCause()).getStatusCode());
+		}
+		testObj.shutdown();
+	}
+	
+	@Test
+	public void testObjectProfiles() throws IOException {
+		HttpResponse good = mock(HttpResponse.class);
+		mock200(good, "good-profile.xml");
+		HttpResponse other = mock(HttpResponse.class);
+		mock200(other, "good-profile.xml");
+		when(mockClient.execute(any(HttpGet.class))).thenReturn(good, other);
+		Map<String, ObjectProfile> profiles = testObj.getObjectProfiles(Arrays.asList("test:object2", "test:object1", "test:object2"));
+		assertEquals(Arrays.asList("test:object2", "test:object1"), new ArrayList<String>(profiles.keySet()));
+		verify(mockClient, times(2)).execute(any(HttpGet.class));
+		testObj.shutdown();
+	}
+	
+	@Test
+	public void testVirtualThreads() throws Exception {
+		if (!FedoraClient.isVirtualThreadsSupported()) {
+			try {
+				testObj.setVirtualThreads(true);
+				fail("Expected virtual threads to be unsupported on " + System.getProperty("java.version"));
+			} catch (UnsupportedOperationException e) {
+				return;
+			}
+		}
+		ExecutorService hedges = testObj.getHedgingExecutor();
+		testObj.setVirtualThreads(true);
+		assertTrue(hedges.isShutdown());
+		assertNotSame(hedges, testObj.getHedgingExecutor());
+		final List<String> threads = new CopyOnWriteArrayList<String>();
+		when(mockClient.execute(any(HttpGet.class))).thenAnswer(new Answer<HttpResponse>() {
+			@Override
+			public HttpResponse answer(InvocationOnMock invocation) throws Throwable {
+				threads.add(Thread.currentThread().getName());
+				HttpResponse good = mock(HttpResponse.class);
+				mock200(good, null);
+				return good;
+			}
+		});
+		testObj.getDatastreamContentAsync("test:object1", "test:ds1").get(5, TimeUnit.SECONDS).close();
+		assertTrue(threads.get(0).startsWith("fcrepo-client-virtual-"));
+		testObj.shutdown();
+	}
+	
+	@Test
+	public void testExecutorChangeReplacesHedgingExecutor() {
+		ExecutorService hedges = testObj.getHedgingExecutor();
+		assertSame(hedges, testObj.getHedgingExecutor());
+		testObj.setVirtualThreads(false);
+		assertTrue(hedges.isShutdown());
+		assertNotSame(hedges, testObj.getHedgingExecutor());
+		hedges = testObj.getHedgingExecutor();
+		testObj.setExecutor(mock(ExecutorService.class));
+		assertTrue(hedges.isShutdown());
+		assertFalse(testObj.getHedgingExecutor().isShutdown());
+		testObj.shutdown();
+	}
+	
+	@Test
+	public void testObjectProfileCached() throws IOException {
+		String id = "test:object1";
+		testObj.setResponseCache(new ResponseCache(10, 0));
+		HttpResponse good = mock(HttpResponse.class);
+		mock200(good, "good-profile.xml");
+		when(good.getFirstHeader(HttpHeaders.ETAG)).thenReturn(new BasicHeader(HttpHeaders.ETAG, "\"v1\""));
+		HttpResponse notModified = mock(HttpResponse.class);
+		StatusLine status304 = mock(StatusLine.class);
+		when(status304.getStatusCode()).thenReturn(304);
+		when(notModified.getStatusLine()).thenReturn(status304);
+		when(mockClient.execute(any(HttpGet.class))).thenReturn(good, notModified);
+		ObjectProfile first = testObj.getObjectProfile(id);
+		ObjectProfile second = testObj.getObjectProfile(id);
+		assertSame(first, second);
+		ArgumentCaptor<HttpGet> gets = ArgumentCaptor.forClass(HttpGet.class);
+		verify(mockClient, times(2)).execute(gets.capture());
+		assertNull(gets.getAllValues().get(0).getFirstHeader(HttpHeaders.IF_NONE_MATCH));
+		assertEquals("\"v1\"", gets.getAllValues().get(1).getFirstHeader(HttpHeaders.IF_NONE_MATCH).getValue());
+		assertEquals(1, testObj.getResponseCache().getHits());
+	}
+	
+	@Test
+	public void testRetryAfterCacheExpiry() throws IOException {
+		final String id = "test:object1";
+		testObj.setResponseCache(new ResponseCache(10, 0));
+		testObj.setRetryPolicy(new RetryPolicy(3, 1, 10));
+		final HttpResponse first = mock(HttpResponse.class);
+		mock200(first, "good-profile.xml");
+		when(first.getFirstHeader(HttpHeaders.ETAG)).thenReturn(new BasicHeader(HttpHeaders.ETAG, "\"v1\""));
+		final HttpResponse error = mock(HttpResponse.class);
+		mock404(error);
+		when(error.getStatusLine().getStatusCode()).thenReturn(503);
+		final HttpResponse good = mock(HttpResponse.class);
+		mock200(good, "good-profile.xml");
+		final List<HttpGet> sent = new ArrayList<HttpGet>();
+		when(mockClient.execute(any(HttpGet.class))).thenAnswer(new Answer<HttpResponse>() {
+			@Override
+			public HttpResponse answer(InvocationOnMock invocation) throws Throwable {
+				sent.add((HttpGet) invocation.getArguments()[0]);
+				if (sent.size() == 2) {
+					/* the cached entry expires while the first attempt fails */
+					testObj.getResponseCache().clear();
+					return error;
+				}
+				return (sent.size() == 1) ? first : good;
+			}
+		});
+		testObj.getObjectProfile(id);
+		assertEquals(id, testObj.getObjectProfile(id).pid);
+		assertEquals(3, sent.size());
+		assertNotNull(sent.get(1).getFirstHeader(HttpHeaders.IF_NONE_MATCH));
+		assertNull(sent.get(2).getFirstHeader(HttpHeaders.IF_NONE_MATCH));
+	}
+	
+	@Test
+	public void testRequestListener() throws IOException {
+		MetricsRecorder metrics = new MetricsRecorder();
+		testObj.setRequestListener(metrics);
+		HttpResponse good = mock(HttpResponse.class);
+		mock200(good, "good-profile.xml");
+		HttpResponse bad = mock(HttpResponse.class);
+		mock404(bad);
+		when(mockClient.execute(any(HttpGet.class))).thenReturn(good, bad);
+		testObj.getObjectProfile("test:object1");
+		try {
+			testObj.getObjectProfile("fail:object");
+		} catch (HttpResponseException e) {
+			assertEquals(404, e.getStatusCode());
+		}
+		MetricsRecorder.OperationMetrics profile = metrics.get(Operation.OBJECT_PROFILE);
+		assertEquals(2, profile.getLatency().getCount());
+		assertEquals(1, profile.getUnmarshalling().getCount());
+		assertEquals(Long.valueOf(1), profile.getStatusCodes().get(200));
+		assertEquals(Long.valueOf(1), profile.getStatusCodes().get(404));
+		assertEquals(0, metrics.get(Operation.DATASTREAM_FIXITY).getLatency().getCount());
+	}
+	
+	@Test
+	public void testCircuitBreaker() throws IOException {
+		testObj.setCircuitBreaker(new CircuitBreaker(1, 60000));
+		HttpResponse error = mock(HttpResponse.class);
+		mock404(error);
+		when(error.getStatusLine().getStatusCode()).thenReturn(503);
+		when(mockClient.execute(any(HttpGet.class))).thenReturn(error);
+		try {
+			testObj.getObjectProfile("test:object1");
+			fail("Expected a 503");
+		} catch (HttpResponseException e) {
+			assertEquals(503, e.getStatusCode());
+		}
+		try {
+			testObj.getObjectProfile("test:object1");
+			fail("Expected the request to be rejected");
+		} catch (RequestRejectedException e) {
+			// the breaker is open
+		}
+		verify(mockClient, times(1)).execute(any(HttpGet.class));
+	}
+	
+	@Test
+	public void testRetry() throws IOException {
+		testObj.setRetryPolicy(new RetryPolicy(3, 1, 10));
+		HttpResponse error = mock(HttpResponse.class);
+		mock404(error);
+		when(error.getStatusLine().getStatusCode()).thenReturn(503);
+		HttpResponse good = mock(HttpResponse.class);
+		mock200(good, "good-profile.xml");
+		when(mockClient.execute(any(HttpGet.class))).thenReturn(error, good);
+		assertEquals("test:object1", testObj.getObjectProfile("test:object1").pid);
+		verify(mockClient, times(2)).execute(any(HttpGet.class));
+	}
+	
+	@Test
+	public void testNoRetryOnClientError() throws IOException {
+		testObj.setRetryPolicy(new RetryPolicy(3, 1, 10));
+		HttpResponse bad = mock(HttpResponse.class);
+		mock404(bad);
+		when(mockClient.execute(any(HttpGet.class))).thenReturn(bad);
+		try {
+			testObj.getObjectProfile("fail:object");
+			fail("Expected a 404");
+		} catch (HttpResponseException e) {
+			assertEquals(404, e.getStatusCode());
+		}
+		verify(mockClient, times(1)).execute(any(HttpGet.class));
+	}
+	
+	@Test
+	public void testHedgedRequest() throws Exception {
+		final HedgingPolicy hedging = new HedgingPolicy(95, 0, 1);
+		hedging.record(Operation.OBJECT_PROFILE, TimeUnit.MILLISECONDS.toNanos(10));
+		testObj.setHedgingPolicy(hedging);
+		final HttpResponse good = mock(HttpResponse.class);
+		mock200(good, "good-profile.xml");
+		final List<HttpGet> sent = new CopyOnWriteArrayList<HttpGet>();
+		when(mockClient.execute(any(HttpGet.class))).thenAnswer(new Answer<HttpResponse>() {
+			@Override
+			public HttpResponse answer(InvocationOnMock invocation) throws Throwable {
+				sent.add((HttpGet) invocation.getArguments()[0]);
+				if (sent.size() == 1) {
+					/* the first request stalls until it is aborted */
+					Thread.sleep(5000);
+				}
+				return good;
+			}
+		});
+		long start = System.nanoTime();
+		assertEquals("test:object1", testObj.getObjectProfile("test:object1").pid);
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+		assertEquals(2, sent.size());
+		assertTrue(sent.get(0).isAborted());
+		assertFalse(sent.get(1).isAborted());
+		testObj.shutdown();
+	}
+	
+	@Test
+	public void testHedgesAreBounded() throws Exception {
+		final HedgingPolicy hedging = new HedgingPolicy(95, 0, 1);
+		hedging.record(Operation.OBJECT_PROFILE, TimeUnit.MILLISECONDS.toNanos(10));
+		InMemoryTransport transport = new InMemoryTransport() {
+			@Override
+			public int getMaxConcurrency() {
+				return 1;
+			}
+		};
+		transport.setHandler("/fcrepo/rest/objects/test:object1", new InMemoryTransport.Handler() {
+			@Override
+			public HttpResponse handle(HttpUriRequest request) throws IOException {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+				return InMemoryTransport.response(200, "text/xml", IOUtils.toByteArray(getClass().getResourceAsStream("good-profile.xml")));
+			}
+		});
+		FedoraClient client = new FedoraClient(transport);
+		client.setFedoraUri("http://localhost/fcrepo");
+		client.setHedgingPolicy(hedging);
+		/* the only permit is held by the first attempt, so no hedge is sent */
+		assertEquals("test:object1", client.getObjectProfile("test:object1").pid);
+		assertEquals(1, transport.getRequestCount());
+		client.shutdown();
+		testObj.shutdown();
+	}
+	
+	@Test
+	public void testHedgeDoesNotSignalOverload() throws Exception {
+		final HedgingPolicy hedging = new HedgingPolicy(95, 0, 1);
+		hedging.record(Operation.OBJECT_PROFILE, TimeUnit.MILLISECONDS.toNanos(10));
+		testObj.setHedgingPolicy(hedging);
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 20, 10000, 1000);
+		testObj.setConcurrencyLimiter(limiter);
+		CircuitBreaker breaker = new CircuitBreaker(1, 60000);
+		testObj.setCircuitBreaker(breaker);
+		RequestListener listener = mock(RequestListener.class);
+		testObj.setRequestListener(listener);
+		final HttpResponse good = mock(HttpResponse.class);
+		mock200(good, "good-profile.xml");
+		final List<HttpGet> sent = new CopyOnWriteArrayList<HttpGet>();
+		when(mockClient.execute(any(HttpGet.class))).thenAnswer(new Answer<HttpResponse>() {
+			@Override
+			public HttpResponse answer(InvocationOnMock invocation) throws Throwable {
+				HttpGet get = (HttpGet) invocation.getArguments()[0];
+				sent.add(get);
+				if (sent.size() == 1) {
+					/* the first request waits for its headers until it is aborted */
+					for (int i = 0; i < 500 && !get.isAborted(); i++) {
+						Thread.sleep(10);
+					}
+					throw new IOException("Request aborted");
+				}
+				return good;
+			}
+		});
+		assertEquals("test:object1", testObj.getObjectProfile("test:object1").pid);
+		for (int i = 0; i < 500 && limiter.getInFlight() > 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, limiter.getInFlight());
+		assertEquals(10, limiter.getLimit());
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		verify(listener, never()).requestFailed(any(Operation.class), any(Exception.class), anyLong());
+		testObj.shutdown();
+	}
+	
+	@Test
+	public void testObjectGraph() throws IOException {
+		String id = "test:object1";
+		HttpResponse profile = mock(HttpResponse.class);
+		mock200(profile, "good-profile.xml");
+		HttpResponse datastreams = mock(HttpResponse.class);
+		mock200(datastreams, "good-datastreams.xml");
+		HttpResponse dsProfile = mock(HttpResponse.class);
+		mock200(dsProfile, "good-datastream-profile.xml");
+		when(mockClient.execute(getLike(testObj.getObjectProfileRequest(id)))).thenReturn(profile);
+		when(mockClient.execute(getLike(testObj.getObjectDatastreamsRequest(id)))).thenReturn(datastreams);
+		when(mockClient.execute(getLike(testObj.getDatastreamProfileRequest(id, "foo:bar")))).thenReturn(dsProfile);
+		ObjectGraph graph = testObj.getObjectGraph(id);
+		assertEquals(id, graph.getProfile().pid);
+		assertEquals(1, graph.getDatastreamProfiles().size());
+		assertNotNull(graph.getDatastreamProfile("foo:bar"));
+		testObj.shutdown();
+	}
+	
+	@Test
+	public void testObjectGraphOrder() throws IOException {
+		String id = "test:object1";
+		HttpResponse profile = mock(HttpResponse.class);
+		mock200(profile, "good-profile.xml");
+		HttpResponse datastreams = mock(HttpResponse.class);
+		mock200(datastreams, "several-datastreams.xml");
+		when(mockClient.execute(getLike(testObj.getObjectProfileRequest(id)))).thenReturn(profile);
+		when(mockClient.execute(getLike(testObj.getObjectDatastreamsRequest(id)))).thenReturn(datastreams);
+		for (String dsId : new String[] {"DC", "RELS-EXT", "content", "thumbnail"}) {
+			HttpResponse dsProfile = mock(HttpResponse.class);
+			mock200(dsProfile, "good-datastream-profile.xml");
+			when(mockClient.execute(getLike(testObj.getDatastreamProfileRequest(id, dsId)))).thenReturn(dsProfile);
+		}
+		ObjectGraph graph = testObj.getObjectGraph(id);
+		assertEquals(Arrays.asList("DC", "RELS-EXT", "content", "thumbnail"), new ArrayList<String>(graph.getDatastreamProfiles().keySet()));
+		testObj.shutdown();
+	}
+	
+	@Test
+	public void testObjectGraphFailure() throws IOException {
+		String id = "test:object1";
+		HttpResponse profile = mock(HttpResponse.class);
+		mock200(profile, "good-profile.xml");
+		HttpResponse datastreams = mock(HttpResponse.class);
+		mock200(datastreams, "good-datastreams.xml");
+		HttpResponse bad = mock(HttpResponse.class);
+		mock404(bad);
+		when(mockClient.execute(getLike(testObj.getObjectProfileRequest(id)))).thenReturn(profile);
+		when(mockClient.execute(getLike(testObj.getObjectDatastreamsRequest(id)))).thenReturn(datastreams);
+		when(mockClient.execute(getLike(testObj.getDatastreamProfileRequest(id, "foo:bar")))).thenReturn(bad);
+		try {
+			testObj.getObjectGraph(id);
+			fail("Expected a 404");
+		} catch (HttpResponseException e) {
+			assertEquals(404, e.getStatusCode());
+		}
+		testObj.shutdown();
+	}
+	
 	@Test
 	public void testObjectDatastreamsRequest() {
 		HashMap<String, String> pathParams = new HashMap<String, String>(1);
@@ -157,6 +578,22 @@ public class FedoraClientTest {
 		}
 	}
 	
+	@Test
+	public void testIterateObjectDatastreams() throws IOException {
+		String id = "test:object1";
+		HttpGet expected = testObj.getObjectDatastreamsRequest(id);
+		HttpResponse good = mock(HttpResponse.class);
+		mock200(good, "good-datastreams.xml");
+		when(mockClient.execute(getLike(expected))).thenReturn(good);
+		DatastreamIterator datastreams = testObj.iterateObjectDatastreams(id);
+		assertTrue(datastreams.hasNext());
+		DatastreamElement ds = datastreams.next();
+		assertEquals("foo:bar", ds.dsid);
+		assertEquals("binary/octet-stream", ds.mimeType);
+		assertEquals(id, datastreams.getPid());
+		assertFalse(datastreams.hasNext());
+	}
+	
 	@Test
 	public void testDatastreamProfileRequest() {
 		HashMap<String, String> pathParams = new HashMap<String, String>(2);
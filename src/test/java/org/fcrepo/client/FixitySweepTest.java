@@ -0,0 +1,171 @@
+package org.fcrepo.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+import javax.xml.bind.JAXBException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.HttpResponseException;
+import org.fcrepo.jaxb.responses.access.ObjectDatastreams;
+import org.fcrepo.jaxb.responses.management.DatastreamFixity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FixitySweepTest {
+
+	private FedoraClient mockFedora;
+	private File journalFile;
+
+	@Before
+	public void setUp() throws IOException, JAXBException {
+		mockFedora = mock(FedoraClient.class);
+		journalFile = File.createTempFile("fixity", ".journal");
+		journalFile.delete();
+		ObjectDatastreams datastreams = (ObjectDatastreams) new FedoraClient(mock(HttpClient.class)).getContext()
+				.createUnmarshaller().unmarshal(getClass().getResourceAsStream("good-datastreams.xml"));
+		when(mockFedora.getObjectDatastreams(anyString())).thenReturn(datastreams);
+	}
+
+	@After
+	public void tearDown() {
+		journalFile.delete();
+	}
+
+	@Test
+	public void testSweepAndResume() throws Exception {
+		when(mockFedora.iteratePids()).thenReturn(pids("[test:1,test:2,test:3]"));
+		when(mockFedora.getDatastreamFixity(anyString(), eq("foo:bar"))).thenReturn(new DatastreamFixity());
+		when(mockFedora.getDatastreamFixity(eq("test:2"), eq("foo:bar"))).thenThrow(new HttpResponseException(500, "Server Error"));
+		FixitySweepListener listener = mock(FixitySweepListener.class);
+
+		FixityJournal journal = new FixityJournal(journalFile);
+		FixitySweep sweep = new FixitySweep(mockFedora, journal);
+		sweep.setConcurrency(2);
+		sweep.setListener(listener);
+		FixitySweepReport report = sweep.run();
+		journal.close();
+
+		assertEquals(3, report.getObjects());
+		assertEquals(2, report.getDatastreams());
+		assertEquals(1, report.getFailures());
+		verify(listener, times(2)).fixityChecked(anyString(), eq("foo:bar"), any(DatastreamFixity.class));
+		verify(listener).fixityFailed(eq("test:2"), eq("foo:bar"), any(Exception.class));
+
+		journal = new FixityJournal(journalFile);
+		assertTrue(journal.isObjectComplete("test:1"));
+		assertFalse(journal.isObjectComplete("test:2"));
+		assertTrue(journal.isObjectComplete("test:3"));
+
+		when(mockFedora.iteratePids()).thenReturn(pids("[test:1,test:2,test:3]"));
+		sweep = new FixitySweep(mockFedora, journal);
+		sweep.setRequestsPerSecond(1000);
+		report = sweep.run();
+		journal.close();
+		assertEquals(2, report.getSkippedObjects());
+		assertEquals(1, report.getObjects());
+		verify(mockFedora, times(1)).getDatastreamFixity("test:1", "foo:bar");
+		verify(mockFedora, times(2)).getDatastreamFixity("test:2", "foo:bar");
+	}
+
+	@Test
+	public void testBadFixity() throws Exception {
+		DatastreamFixity bad = (DatastreamFixity) new FedoraClient(mock(HttpClient.class)).getContext()
+				.createUnmarshaller().unmarshal(getClass().getResourceAsStream("bad-datastream-fixity.xml"));
+		assertEquals(1, FixitySweep.badResults(bad).size());
+		when(mockFedora.iteratePids()).thenReturn(pids("[test:1,test:2]"));
+		when(mockFedora.getDatastreamFixity("test:1", "foo:bar")).thenReturn(new DatastreamFixity());
+		when(mockFedora.getDatastreamFixity("test:2", "foo:bar")).thenReturn(bad);
+		FixitySweepListener listener = mock(FixitySweepListener.class);
+		FixityJournal journal = new FixityJournal(journalFile);
+		FixitySweep sweep = new FixitySweep(mockFedora, journal);
+		sweep.setListener(listener);
+		FixitySweepReport report = sweep.run();
+		journal.close();
+		assertEquals(1, report.getDatastreams());
+		assertEquals(1, report.getFailures());
+		verify(listener).fixityFailed(eq("test:2"), eq("foo:bar"), any(FixityException.class));
+		verify(listener, never()).fixityChecked(eq("test:2"), anyString(), any(DatastreamFixity.class));
+		journal = new FixityJournal(journalFile);
+		assertTrue(journal.isObjectComplete("test:1"));
+		assertFalse(journal.isObjectComplete("test:2"));
+		assertFalse(journal.isDatastreamComplete("test:2", "foo:bar"));
+		journal.close();
+	}
+
+	@Test(timeout = 10000)
+	public void testThrowingListener() throws Exception {
+		when(mockFedora.iteratePids()).thenReturn(pids("[test:1,test:2]"));
+		when(mockFedora.getObjectDatastreams("test:1")).thenThrow(new HttpResponseException(404, "Not Found"));
+		when(mockFedora.getDatastreamFixity("test:2", "foo:bar")).thenReturn(new DatastreamFixity());
+		FixitySweepListener listener = mock(FixitySweepListener.class);
+		doThrow(new IllegalStateException()).when(listener).fixityFailed(anyString(), anyString(), any(Exception.class));
+		doThrow(new IllegalStateException()).when(listener).fixityChecked(anyString(), anyString(), any(DatastreamFixity.class));
+		FixityJournal journal = new FixityJournal(journalFile);
+		FixitySweep sweep = new FixitySweep(mockFedora, journal);
+		sweep.setConcurrency(1);
+		sweep.setListener(listener);
+		FixitySweepReport report = sweep.run();
+		journal.close();
+		assertEquals(2, report.getObjects());
+		assertEquals(1, report.getDatastreams());
+		assertEquals(1, report.getFailures());
+		journal = new FixityJournal(journalFile);
+		assertFalse(journal.isObjectComplete("test:1"));
+		assertTrue(journal.isObjectComplete("test:2"));
+		journal.close();
+	}
+
+	@Test
+	public void testListFailure() throws Exception {
+		when(mockFedora.iteratePids()).thenReturn(pids("[test:1]"));
+		when(mockFedora.getObjectDatastreams("test:1")).thenThrow(new HttpResponseException(404, "Not Found"));
+		FixityJournal journal = new FixityJournal(journalFile);
+		FixitySweepReport report = new FixitySweep(mockFedora, journal).run();
+		journal.close();
+		assertEquals(1, report.getFailures());
+		verify(mockFedora, never()).getDatastreamFixity(anyString(), anyString());
+		journal = new FixityJournal(journalFile);
+		assertFalse(journal.isObjectComplete("test:1"));
+		journal.close();
+	}
+
+	@Test
+	public void testTruncatedJournal() throws IOException {
+		FixityJournal journal = new FixityJournal(journalFile);
+		journal.objectComplete("test:2");
+		journal.close();
+		/* an interrupted run cut off the record for test:10 */
+		FileUtils.writeStringToFile(journalFile, "O\ttest:1", "UTF-8", true);
+		journal = new FixityJournal(journalFile);
+		assertTrue(journal.isObjectComplete("test:2"));
+		assertFalse(journal.isObjectComplete("test:1"));
+		journal.objectComplete("test:3");
+		journal.close();
+		journal = new FixityJournal(journalFile);
+		assertTrue(journal.isObjectComplete("test:3"));
+		assertFalse(journal.isObjectComplete("test:1"));
+		assertEquals(2, journal.getCompletedObjectCount());
+		journal.close();
+	}
+
+	private static PidIterator pids(String json) {
+		return new PidIterator(new ByteArrayInputStream(json.getBytes()));
+	}
+}
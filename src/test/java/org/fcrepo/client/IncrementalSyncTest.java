@@ -0,0 +1,181 @@
+package org.fcrepo.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IncrementalSyncTest {
+
+	private static final String OBJECTS = "/fcrepo/rest/objects";
+
+	private InMemoryTransport transport;
+	private FedoraClient client;
+	private File file;
+	private final List<String> events = new CopyOnWriteArrayList<String>();
+	private volatile String failingPid;
+
+	@Before
+	public void setUp() throws IOException {
+		transport = new InMemoryTransport();
+		client = new FedoraClient(transport);
+		client.setFedoraUri("http://localhost/fcrepo");
+		file = File.createTempFile("objects", ".index");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() {
+		client.shutdown();
+		file.delete();
+	}
+
+	@Test
+	public void testSync() throws Exception {
+		setPids("test:1", "test:2");
+		setObject("test:1", "2013-01-01", "urn:sha1:aaa");
+		setObject("test:2", "2013-01-01", "urn:sha1:bbb");
+		SyncReport report = sync();
+		assertEquals(2, report.getAdded());
+		assertEquals(2, new ObjectIndex(file).size());
+
+		/* nothing changed: one profile request per object */
+		long requests = transport.getRequestCount();
+		report = sync();
+		assertEquals(2, report.getUnchanged());
+		assertEquals(3, transport.getRequestCount() - requests);
+
+		setPids("test:1", "test:3");
+		setObject("test:1", "2013-02-01", "urn:sha1:ccc");
+		setObject("test:3", "2013-02-01", "urn:sha1:ddd");
+		events.clear();
+		requests = transport.getRequestCount();
+		report = sync();
+		/* the object list, then profile, datastream list and datastream profile for each of the two objects */
+		assertEquals(7, transport.getRequestCount() - requests);
+		assertEquals(1, report.getAdded());
+		assertEquals(1, report.getChanged());
+		assertEquals(1, report.getDeleted());
+		assertEquals(0, report.getFailures());
+		assertEquals(3, events.size());
+		assertEquals("changed test:1 [ds1]", event("changed test:1"));
+
+		ObjectIndex index = new ObjectIndex(file);
+		assertEquals("2013-02-01", index.get("test:1").getLastModified());
+		assertEquals("urn:sha1:ccc", index.get("test:1").getChecksums().get("ds1"));
+		assertNull(index.get("test:2"));
+	}
+
+	@Test
+	public void testFailureKeepsEntry() throws Exception {
+		setPids("test:1");
+		setObject("test:1", "2013-01-01", "urn:sha1:aaa");
+		sync();
+		transport.setResponse(OBJECTS + "/test:1", 500, null, null);
+		SyncReport report = sync();
+		assertEquals(1, report.getFailures());
+		assertEquals("urn:sha1:aaa", new ObjectIndex(file).get("test:1").getChecksums().get("ds1"));
+	}
+
+	@Test
+	public void testListenerFailureIsRetried() throws Exception {
+		setPids("test:1");
+		setObject("test:1", "2013-01-01", "urn:sha1:aaa");
+		failingPid = "test:1";
+		SyncReport report = sync();
+		assertEquals(0, report.getAdded());
+		assertEquals(1, report.getFailures());
+		assertNull(new ObjectIndex(file).get("test:1"));
+		failingPid = null;
+		assertEquals(1, sync().getAdded());
+
+		setObject("test:1", "2013-02-01", "urn:sha1:bbb");
+		failingPid = "test:1";
+		assertEquals(1, sync().getFailures());
+		assertEquals("2013-01-01", new ObjectIndex(file).get("test:1").getLastModified());
+		failingPid = null;
+		assertEquals(1, sync().getChanged());
+
+		setPids();
+		failingPid = "test:1";
+		report = sync();
+		assertEquals(0, report.getDeleted());
+		assertEquals(1, report.getFailures());
+		assertEquals(1, new ObjectIndex(file).size());
+		failingPid = null;
+		assertEquals(1, sync().getDeleted());
+	}
+
+	private SyncReport sync() throws Exception {
+		IncrementalSync sync = new IncrementalSync(client, new ObjectIndex(file));
+		sync.setConcurrency(2);
+		sync.setListener(new SyncListener() {
+			@Override
+			public void objectAdded(ObjectGraph object) {
+				throwIfFailing(object.getProfile().pid);
+				events.add("added " + object.getProfile().pid);
+			}
+
+			@Override
+			public void objectChanged(ObjectGraph object, Set<String> changedDatastreams) {
+				throwIfFailing(object.getProfile().pid);
+				events.add("changed " + object.getProfile().pid + " " + changedDatastreams);
+			}
+
+			@Override
+			public void objectDeleted(String pid) {
+				throwIfFailing(pid);
+				events.add("deleted " + pid);
+			}
+
+			@Override
+			public void syncFailed(String pid, Exception cause) {
+				events.add("failed " + pid);
+			}
+		});
+		return sync.run();
+	}
+
+	private void throwIfFailing(String pid) {
+		if (pid.equals(failingPid)) {
+			throw new IllegalStateException("Listener failed for " + pid);
+		}
+	}
+
+	private String event(String prefix) {
+		for (String event : events) {
+			if (event.startsWith(prefix)) {
+				return event;
+			}
+		}
+		return null;
+	}
+
+	private void setPids(String... pids) {
+		StringBuilder json = new StringBuilder("[");
+		for (String pid : pids) {
+			json.append(json.length() > 1 ? "," : "").append('"').append(pid).append('"');
+		}
+		transport.setResponse(OBJECTS, 200, "application/json", json.append(']').toString().getBytes());
+	}
+
+	private void setObject(String pid, String lastModified, String checksum) {
+		transport.setResponse(OBJECTS + "/" + pid, 200, "text/xml", ("<objectProfile pid=\"" + pid
+				+ "\" xmlns=\"http://www.fedora.info/definitions/1/0/access/\"><objLastModDate>" + lastModified
+				+ "</objLastModDate></objectProfile>").getBytes());
+		transport.setResponse(OBJECTS + "/" + pid + "/datastreams/", 200, "text/xml", ("<objectDatastreams pid=\"" + pid
+				+ "\" xmlns=\"http://www.fedora.info/definitions/1/0/access/\"><datastreams>"
+				+ "<datastream dsid=\"ds1\"/></datastreams></objectDatastreams>").getBytes());
+		transport.setResponse(OBJECTS + "/" + pid + "/datastreams/ds1", 200, "text/xml", ("<datastreamProfile pid=\""
+				+ pid + "\" dsID=\"ds1\" xmlns=\"http://www.fedora.info/definitions/1/0/management/\"><dsChecksum>"
+				+ checksum + "</dsChecksum></datastreamProfile>").getBytes());
+	}
+}
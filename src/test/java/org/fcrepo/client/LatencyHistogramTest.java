@@ -0,0 +1,32 @@
+package org.fcrepo.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(100), histogram.getMaxNanos());
+		long p50 = histogram.getPercentileNanos(50);
+		assertTrue(p50 >= TimeUnit.MILLISECONDS.toNanos(50) && p50 <= TimeUnit.MILLISECONDS.toNanos(100));
+		long p95 = histogram.getPercentileNanos(95);
+		assertTrue(p95 >= TimeUnit.MILLISECONDS.toNanos(95) && p95 <= TimeUnit.MILLISECONDS.toNanos(100));
+	}
+
+	@Test
+	public void testEmpty() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentileNanos(99));
+		assertEquals(0, histogram.getMeanNanos());
+	}
+}
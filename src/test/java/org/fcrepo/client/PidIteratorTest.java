@@ -0,0 +1,82 @@
+package org.fcrepo.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.http.client.methods.AbortableHttpRequest;
+import org.junit.Test;
+
+public class PidIteratorTest {
+
+	@Test
+	public void testBarePids() {
+		assertEquals(Arrays.asList("test:object1", "test:object2"), read("[test:object1,test:object2]"));
+	}
+
+	@Test
+	public void testQuotedPids() {
+		assertEquals(Arrays.asList("test:object1", "test:\"2\"", "a,b"), read(" [ \"test:object1\" , \"test:\\\"2\\\"\",\"a\\u002cb\" ]\n"));
+	}
+
+	@Test
+	public void testEmptyList() {
+		assertEquals(0, read("[]").size());
+		assertEquals(0, read(" [ ] ").size());
+		assertEquals(0, read("").size());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testNotAnArray() {
+		read("{\"pids\":[]}");
+	}
+
+	@Test
+	public void testLargeList() {
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < 20000; i++) {
+			if (i > 0) json.append(',');
+			json.append("test:").append(i);
+		}
+		json.append(']');
+		List<String> pids = read(json.toString());
+		assertEquals(20000, pids.size());
+		assertEquals("test:19999", pids.get(19999));
+	}
+
+	@Test
+	public void testEarlyCloseAbortsRequest() {
+		AbortableHttpRequest request = mock(AbortableHttpRequest.class);
+		PidIterator pids = new PidIterator(new ByteArrayInputStream("[a,b,c]".getBytes()), request);
+		assertEquals("a", pids.next());
+		pids.close();
+		verify(request).abort();
+	}
+
+	@Test
+	public void testExhaustedDoesNotAbort() throws IOException {
+		AbortableHttpRequest request = mock(AbortableHttpRequest.class);
+		PidIterator pids = new PidIterator(new ByteArrayInputStream("[a]".getBytes()), request);
+		assertEquals("a", pids.next());
+		assertFalse(pids.hasNext());
+		pids.close();
+		verify(request, never()).abort();
+	}
+
+	private static List<String> read(String json) {
+		PidIterator pids = new PidIterator(new ByteArrayInputStream(json.getBytes()));
+		List<String> result = new ArrayList<String>();
+		while (pids.hasNext()) {
+			result.add(pids.next());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,123 @@
+package org.fcrepo.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RepositoryExportTest {
+
+	private static final String OBJECTS = "/fcrepo/rest/objects";
+
+	private InMemoryTransport transport;
+	private FedoraClient client;
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		transport = new InMemoryTransport();
+		client = new FedoraClient(transport);
+		client.setFedoraUri("http://localhost/fcrepo");
+		directory = File.createTempFile("export", "");
+		directory.delete();
+		transport.setResponse(OBJECTS, 200, "application/json", "[\"test:1\",\"test:2\"]".getBytes());
+		setObject("test:1", "one");
+		setObject("test:2", "two");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		client.shutdown();
+		FileUtils.deleteDirectory(directory);
+	}
+
+	@Test
+	public void testExport() throws Exception {
+		RepositoryExport export = new RepositoryExport(client, directory);
+		export.setConcurrency(2);
+		ExportReport report = export.run();
+		assertEquals(2, report.getObjects());
+		assertEquals(2, report.getDatastreams());
+		assertEquals(6, report.getBytes());
+		assertEquals(0, report.getFailures());
+		File object = new File(directory, "objects/test%3A1");
+		assertTrue(new File(object, "object.xml").isFile());
+		assertTrue(new File(object, "datastreams/ds1.xml").isFile());
+		assertEquals("one", FileUtils.readFileToString(new File(object, "datastreams/ds1.content")));
+		List<String> index = FileUtils.readLines(new File(directory, RepositoryExport.INDEX_FILE));
+		assertEquals(4, index.size());
+		assertTrue(index.contains("D\ttest:1\tds1\t3\tfe05bcdcdc4928012781a5f1a2a77cbb5398e106\t$"));
+		/* the test profiles have no last modified date */
+		assertTrue(index.contains("O\ttest:1\t\t$"));
+
+		/* a second run resumes, and reports on itself alone */
+		report = export.run();
+		assertEquals(0, report.getObjects());
+		assertEquals(0, report.getBytes());
+		assertEquals(2, report.getSkippedObjects());
+	}
+
+	@Test
+	public void testFailedObjectIsRetried() throws Exception {
+		transport.setResponse(OBJECTS + "/test:2/datastreams/ds1/content", 500, null, null);
+		ExportReport report = new RepositoryExport(client, directory).run();
+		assertEquals(1, report.getObjects());
+		assertEquals(1, report.getFailures());
+		setObject("test:2", "two");
+		report = new RepositoryExport(client, directory).run();
+		assertEquals(1, report.getObjects());
+		assertEquals(1, report.getSkippedObjects());
+	}
+
+	@Test
+	public void testTruncatedIndex() throws Exception {
+		transport.setResponse(OBJECTS, 200, "application/json", "[\"test:1\"]".getBytes());
+		new RepositoryExport(client, directory).run();
+		File indexFile = new File(directory, RepositoryExport.INDEX_FILE);
+		/* an interrupted export cut off the record for test:2 */
+		FileUtils.writeStringToFile(indexFile, "O\ttest:2\t", "UTF-8", true);
+		transport.setResponse(OBJECTS, 200, "application/json", "[\"test:1\",\"test:2\"]".getBytes());
+		ExportReport report = new RepositoryExport(client, directory).run();
+		assertEquals(1, report.getSkippedObjects());
+		assertEquals(1, report.getObjects());
+		List<String> index = FileUtils.readLines(indexFile);
+		assertTrue(index.contains("O\ttest:2\t"));
+		assertTrue(index.contains("O\ttest:2\t\t$"));
+		report = new RepositoryExport(client, directory).run();
+		assertEquals(2, report.getSkippedObjects());
+	}
+
+	@Test
+	public void testDatastreamNamedObject() throws Exception {
+		transport.setResponse(OBJECTS, 200, "application/json", "[\"test:1\"]".getBytes());
+		setObject("test:1", "object", "one");
+		ExportReport report = new RepositoryExport(client, directory).run();
+		assertEquals(1, report.getObjects());
+		File object = new File(directory, "objects/test%3A1");
+		assertTrue(FileUtils.readFileToString(new File(object, "object.xml")).contains("objectProfile"));
+		assertTrue(FileUtils.readFileToString(new File(object, "datastreams/object.xml")).contains("datastreamProfile"));
+		assertEquals("one", FileUtils.readFileToString(new File(object, "datastreams/object.content")));
+	}
+
+	private void setObject(String pid, String content) {
+		setObject(pid, "ds1", content);
+	}
+
+	private void setObject(String pid, String dsId, String content) {
+		transport.setResponse(OBJECTS + "/" + pid, 200, "text/xml", ("<objectProfile pid=\"" + pid
+				+ "\" xmlns=\"http://www.fedora.info/definitions/1/0/access/\"/>").getBytes());
+		transport.setResponse(OBJECTS + "/" + pid + "/datastreams/", 200, "text/xml", ("<objectDatastreams pid=\"" + pid
+				+ "\" xmlns=\"http://www.fedora.info/definitions/1/0/access/\"><datastreams>"
+				+ "<datastream dsid=\"" + dsId + "\"/></datastreams></objectDatastreams>").getBytes());
+		transport.setResponse(OBJECTS + "/" + pid + "/datastreams/" + dsId, 200, "text/xml", ("<datastreamProfile pid=\""
+				+ pid + "\" dsID=\"" + dsId + "\" xmlns=\"http://www.fedora.info/definitions/1/0/management/\"/>").getBytes());
+		transport.setResponse(OBJECTS + "/" + pid + "/datastreams/" + dsId + "/content", 200, "text/plain", content.getBytes());
+	}
+}
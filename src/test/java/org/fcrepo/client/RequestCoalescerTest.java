@@ -0,0 +1,79 @@
+package org.fcrepo.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class RequestCoalescerTest {
+
+	private final RequestCoalescer testObj = new RequestCoalescer();
+
+	@Test
+	public void testConcurrentRequestsShareResult() throws Exception {
+		final AtomicInteger calls = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Callable<Object> request = new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				calls.incrementAndGet();
+				started.countDown();
+				release.await();
+				return new Object();
+			}
+		};
+		ExecutorService threads = Executors.newFixedThreadPool(4);
+		try {
+			Future<Object> first = threads.submit(coalesced(request));
+			started.await(5, TimeUnit.SECONDS);
+			Future<Object> second = threads.submit(coalesced(request));
+			Future<Object> third = threads.submit(coalesced(request));
+			// give the later callers time to join the request in flight
+			Thread.sleep(200);
+			release.countDown();
+			Object result = first.get(5, TimeUnit.SECONDS);
+			assertSame(result, second.get(5, TimeUnit.SECONDS));
+			assertSame(result, third.get(5, TimeUnit.SECONDS));
+			assertEquals(1, calls.get());
+			assertEquals(0, testObj.inFlightCount());
+		} finally {
+			threads.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testFailureIsRethrown() throws Exception {
+		try {
+			testObj.execute("key", new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					throw new IOException("failed");
+				}
+			});
+			fail("Expected an IOException");
+		} catch (IOException e) {
+			assertEquals("failed", e.getMessage());
+		}
+		assertEquals(0, testObj.inFlightCount());
+	}
+
+	private Callable<Object> coalesced(final Callable<Object> request) {
+		return new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return testObj.execute("key", request);
+			}
+		};
+	}
+}
@@ -0,0 +1,166 @@
+package org.fcrepo.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TransportTest {
+
+	@Test
+	public void testInMemory() throws IOException {
+		InMemoryTransport transport = new InMemoryTransport();
+		transport.setResponse("/fcrepo/rest/objects/test:object1", 200, "text/xml", resource("good-profile.xml"));
+		FedoraClient client = new FedoraClient(transport);
+		client.setFedoraUri("http://localhost/fcrepo");
+		assertEquals("test:object1", client.getObjectProfile("test:object1").pid);
+		try {
+			client.getObjectProfile("fail:object");
+			fail("Expected a 404");
+		} catch (HttpResponseException e) {
+			assertEquals(404, e.getStatusCode());
+		}
+		assertEquals(2, transport.getRequestCount());
+		client.shutdown();
+	}
+
+	@Test(expected = IOException.class)
+	public void testInMemoryAborted() throws IOException {
+		HttpGet get = new HttpGet("http://localhost/fcrepo/rest/objects");
+		get.abort();
+		new InMemoryTransport().execute(get);
+	}
+
+	@Test
+	public void testJdk() throws IOException {
+		final byte[] profile = resource("good-profile.xml");
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				if (exchange.getRequestURI().getPath().endsWith("/test:object1")) {
+					exchange.getResponseHeaders().set("Content-Type", "text/xml");
+					exchange.sendResponseHeaders(200, profile.length);
+					OutputStream out = exchange.getResponseBody();
+					out.write(profile);
+					out.close();
+				} else {
+					exchange.sendResponseHeaders(404, -1);
+				}
+				exchange.close();
+			}
+		});
+		server.start();
+		FedoraClient client = new FedoraClient(new JdkTransport());
+		try {
+			client.setFedoraUri("http://127.0.0.1:" + server.getAddress().getPort() + "/fcrepo");
+			assertEquals("test:object1", client.getObjectProfile("test:object1").pid);
+			HttpResponse resp = new JdkTransport().execute(client.getObjectProfileRequest("test:object1"));
+			assertEquals("text/xml", resp.getEntity().getContentType().getValue());
+			assertEquals(profile.length, resp.getEntity().getContentLength());
+			IOUtils.closeQuietly(resp.getEntity().getContent());
+			try {
+				client.getObjectProfile("fail:object");
+				fail("Expected a 404");
+			} catch (HttpResponseException e) {
+				assertEquals(404, e.getStatusCode());
+			}
+		} finally {
+			client.shutdown();
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testCompression() throws IOException {
+		final byte[] profile = resource("good-profile.xml");
+		final byte[] pids = "[test:object1,test:object2]".getBytes("UTF-8");
+		final byte[] content = "some text content".getBytes("UTF-8");
+		final String[] contentEncoding = new String[1];
+		InMemoryTransport transport = new InMemoryTransport();
+		transport.setHandler("/fcrepo/rest/objects/test:object1", new InMemoryTransport.Handler() {
+			@Override
+			public HttpResponse handle(HttpUriRequest request) {
+				return compressed(request, "gzip", profile);
+			}
+		});
+		transport.setHandler("/fcrepo/rest/objects", new InMemoryTransport.Handler() {
+			@Override
+			public HttpResponse handle(HttpUriRequest request) {
+				return compressed(request, "deflate", pids);
+			}
+		});
+		transport.setHandler("/fcrepo/rest/objects/test:object1/datastreams/ds1/content", new InMemoryTransport.Handler() {
+			@Override
+			public HttpResponse handle(HttpUriRequest request) {
+				contentEncoding[0] = (request.getFirstHeader(HttpHeaders.ACCEPT_ENCODING) != null)
+						? request.getFirstHeader(HttpHeaders.ACCEPT_ENCODING).getValue() : null;
+				return compressed(request, "gzip", content);
+			}
+		});
+		FedoraClient client = new FedoraClient(transport);
+		client.setFedoraUri("http://localhost/fcrepo");
+		assertEquals("test:object1", client.getObjectProfile("test:object1").pid);
+		assertEquals(Arrays.asList("test:object1", "test:object2"), client.getPids());
+
+		assertArrayEquals(content, IOUtils.toByteArray(client.getDatastreamContent("test:object1", "ds1")));
+		assertNull(contentEncoding[0]);
+		client.setContentCompression(true);
+		assertArrayEquals(content, IOUtils.toByteArray(client.getDatastreamContent("test:object1", "ds1")));
+		assertEquals(FedoraClient.ACCEPT_ENCODING, contentEncoding[0]);
+
+		HttpResponse resp = FedoraClient.decompress(compressed(client.getObjectProfileRequest("test:object1"), "gzip", profile));
+		assertNull(resp.getFirstHeader(HttpHeaders.CONTENT_ENCODING));
+		assertArrayEquals(profile, IOUtils.toByteArray(resp.getEntity().getContent()));
+		client.shutdown();
+	}
+
+	/* compress the body if the request accepts the encoding */
+	private static HttpResponse compressed(HttpUriRequest request, String encoding, byte[] body) {
+		if (request.getFirstHeader(HttpHeaders.ACCEPT_ENCODING) == null
+				|| !request.getFirstHeader(HttpHeaders.ACCEPT_ENCODING).getValue().contains(encoding)) {
+			return InMemoryTransport.response(200, "text/plain", body);
+		}
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try {
+			OutputStream out = "gzip".equals(encoding) ? new GZIPOutputStream(compressed) : new DeflaterOutputStream(compressed);
+			out.write(body);
+			out.close();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		HttpResponse resp = InMemoryTransport.response(200, "text/plain", compressed.toByteArray());
+		resp.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+		return resp;
+	}
+
+	private static byte[] resource(String name) throws IOException {
+		InputStream in = TransportTest.class.getResourceAsStream(name);
+		try {
+			return IOUtils.toByteArray(in);
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package org.fcrepo.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class VerifyingInputStreamTest {
+
+	private static final byte[] CONTENT = "The quick brown fox jumps over the lazy dog".getBytes();
+	private static final String SHA1 = "2fd4e1c67a2d28fced849ee1bb76e7391b93eb12";
+	private static final String SHA256 = "d7a8fbb307d7809469ca9abcb0082e4f8d5651e46d3cdb762d02d0bf37c9e592";
+	private static final String MD5 = "9e107d9d372bb6826bd81d3542a419d6";
+
+	@Test
+	public void testVerifiesWhileCopying() throws IOException {
+		VerifyingInputStream in = new VerifyingInputStream(new ByteArrayInputStream(CONTENT), "SHA1", SHA1.toUpperCase(), "sha256", "MD5");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		IOUtils.copy(in, out);
+		assertEquals(CONTENT.length, out.size());
+		assertTrue(in.isVerified());
+		assertEquals(SHA1, in.getChecksums().get("SHA-1"));
+		assertEquals(SHA256, in.getChecksums().get("SHA-256"));
+		assertEquals(MD5, in.getChecksums().get("MD5"));
+	}
+
+	@Test
+	public void testMismatch() throws IOException {
+		VerifyingInputStream in = new VerifyingInputStream(new ByteArrayInputStream(CONTENT), "SHA-1", MD5);
+		try {
+			IOUtils.copy(in, new ByteArrayOutputStream());
+			fail("Expected a fixity failure");
+		} catch (FixityException e) {
+			assertEquals(SHA1, e.getActual());
+			assertEquals(MD5, e.getExpected());
+		}
+		assertFalse(in.isVerified());
+	}
+
+	@Test
+	public void testSkippedBytesAreDigested() throws IOException {
+		VerifyingInputStream in = new VerifyingInputStream(new ByteArrayInputStream(CONTENT), null, null, "SHA-1");
+		assertEquals(0, in.skip(-1));
+		assertEquals(0, in.skip(0));
+		assertEquals(10, in.skip(10));
+		IOUtils.copy(in, new ByteArrayOutputStream());
+		assertEquals(SHA1, in.getChecksums().get("SHA-1"));
+		assertFalse(in.isVerified());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testChecksumsBeforeEnd() throws IOException {
+		new VerifyingInputStream(new ByteArrayInputStream(CONTENT), null, null, "MD5").getChecksums();
+	}
+
+	@Test
+	public void testNormalize() {
+		assertEquals("SHA-1", VerifyingInputStream.normalize("sha1"));
+		assertEquals("SHA-256", VerifyingInputStream.normalize("SHA-256"));
+		assertEquals("MD5", VerifyingInputStream.normalize("md5"));
+	}
+}